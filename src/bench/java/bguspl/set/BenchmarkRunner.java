@@ -0,0 +1,66 @@
+package bguspl.set;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler enabled, so every result also reports the allocation rate.
+ * Takes the usual JMH command line options, e.g.:
+ * java -jar target/benchmarks.jar UtilBenchmark -p featureCount=4,5 -p util=bguspl.set.UtilImpl
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams() || options.shouldListProfilers()
+                || options.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+
+    /**
+     * Creates a game configuration for the benchmarks, with logging turned off.
+     *
+     * @param settings - "Key=Value" entries overriding the defaults of config.properties.
+     * @return - the configuration.
+     */
+    public static Config config(String... settings) {
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        for (String setting : settings) {
+            String[] keyValue = setting.split("=", 2);
+            properties.setProperty(keyValue[0].trim(), keyValue[1].trim());
+        }
+        return new Config(quietLogger(), properties);
+    }
+
+    /**
+     * Creates a game environment for the benchmarks, with a user interface that shows nothing. The event bus of the
+     * environment is not started.
+     *
+     * @param settings - "Key=Value" entries overriding the defaults of config.properties.
+     * @return - the environment.
+     */
+    public static Env env(String... settings) {
+        Config config = config(settings);
+        UserInterface ui = (UserInterface) Proxy.newProxyInstance(UserInterface.class.getClassLoader(),
+                new Class<?>[]{UserInterface.class}, (proxy, method, args) -> null);
+        return new Env(quietLogger(), config, ui, new UtilImpl(config));
+    }
+
+    private static Logger quietLogger() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.OFF);
+        return logger;
+    }
+}
@@ -0,0 +1,134 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Plays whole games headlessly (dealer, computer players and table, no user interface) back to back for a fixed
+ * time and reports the throughput and latency of the claims. The results are written as JSON, so they can be compared
+ * across builds. Usage:
+ * java -cp target/benchmarks.jar bguspl.set.GameBenchmark [-d seconds] [-o file] [Key=Value ...]
+ * where the Key=Value entries override the game configuration, e.g. ComputerPlayers=32 ComputerSetProbability=0.5
+ */
+public class GameBenchmark {
+
+    /**
+     * The configuration of the benchmark games, before the command line overrides: no delays or freezes, so the
+     * players and the dealer run as fast as they can.
+     */
+    private static final String[] DEFAULTS = {"HumanPlayers=0", "ComputerPlayers=8", "ComputerKeyDelaySeconds=0",
+            "ComputerSetProbability=0.2", "TableDelaySeconds=0", "PointFreezeSeconds=0", "PenaltyFreezeSeconds=0",
+            "EndGamePauseSeconds=0", "TurnTimeoutSeconds=60", "TurnTimeoutWarningSeconds=5", "Hints=False"};
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        double seconds = 10;
+        Path output = Paths.get("target/game-benchmark.json");
+        List<String> settings = new ArrayList<>(Arrays.asList(DEFAULTS));
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-d")) seconds = Double.parseDouble(args[++i]);
+            else if (args[i].equals("-o")) output = Paths.get(args[++i]);
+            else if (args[i].contains("=")) settings.add(args[i]);
+            else {
+                System.err.println("usage: GameBenchmark [-d seconds] [-o file] [Key=Value ...]");
+                System.exit(1);
+            }
+        }
+
+        Env env = BenchmarkRunner.env(settings.toArray(new String[0]));
+        env.events.start();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        // the players report every token and penalty on the console
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+        }));
+
+        int games = 0;
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1_000_000_000L);
+        try {
+            while (System.nanoTime() < deadline) {
+                playGame(env, deadline);
+                games++;
+            }
+        } finally {
+            System.setOut(console);
+        }
+        long elapsed = System.nanoTime() - start;
+        env.events.close();
+
+        String json = toJson(env, settings, games, elapsed, threads.getPeakThreadCount());
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            out.println(json);
+        }
+        System.out.println(json);
+    }
+
+    /**
+     * Plays one game, until it ends or until the deadline.
+     */
+    private static void playGame(Env env, long deadline) throws InterruptedException {
+        Player[] players = new Player[env.config.players];
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        Thread dealerThread = new Thread(dealer, "dealer");
+        dealerThread.start();
+        long timeLeft = deadline - System.nanoTime();
+        if (timeLeft > 0) dealerThread.join(Math.max(1, timeLeft / 1_000_000));
+        dealer.terminate();
+        dealerThread.join();
+    }
+
+    private static String toJson(Env env, List<String> settings, int games, long elapsedNanos, int peakThreads) {
+        Metrics metrics = env.metrics;
+        double seconds = elapsedNanos / 1e9;
+        long legal = metrics.legalClaims.getCount();
+        long illegal = metrics.illegalClaims.getCount();
+        long claims = legal + illegal;
+
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"settings\": [");
+        for (int i = 0; i < settings.size(); i++)
+            json.append(i == 0 ? "" : ", ").append('"').append(settings.get(i).replace("\"", "\\\"")).append('"');
+        json.append("],\n");
+        json.append(String.format(Locale.ROOT, "  \"javaVersion\": \"%s\",%n", System.getProperty("java.version")));
+        json.append(String.format(Locale.ROOT, "  \"players\": %d,%n", env.config.players));
+        json.append(String.format(Locale.ROOT, "  \"seconds\": %.3f,%n", seconds));
+        json.append(String.format(Locale.ROOT, "  \"games\": %d,%n", games));
+        json.append(String.format(Locale.ROOT, "  \"sets\": %d,%n", legal));
+        json.append(String.format(Locale.ROOT, "  \"claims\": %d,%n", claims));
+        json.append(String.format(Locale.ROOT, "  \"setsPerSecond\": %.1f,%n", legal / seconds));
+        json.append(String.format(Locale.ROOT, "  \"claimsPerSecond\": %.1f,%n", claims / seconds));
+        json.append(String.format(Locale.ROOT, "  \"rejectedRatio\": %.4f,%n", claims == 0 ? 0.0 : (double) illegal / claims));
+        json.append(String.format(Locale.ROOT, "  \"claimLatencyP50Micros\": %.1f,%n", metrics.claimToVerdictNanos.getP50() / 1e3));
+        json.append(String.format(Locale.ROOT, "  \"claimLatencyP99Micros\": %.1f,%n", metrics.claimToVerdictNanos.getP99() / 1e3));
+        json.append(String.format(Locale.ROOT, "  \"keyPressToTokenP99Micros\": %.1f,%n", metrics.keyPressToTokenNanos.getP99() / 1e3));
+        json.append(String.format(Locale.ROOT, "  \"reshuffleP50Micros\": %.1f,%n", metrics.reshuffleNanos.getP50() / 1e3));
+        json.append(String.format(Locale.ROOT, "  \"dealerWakeups\": %d,%n", metrics.dealerWakeups.getCount()));
+        json.append(String.format(Locale.ROOT, "  \"peakThreads\": %d%n", peakThreads));
+        return json.append('}').toString();
+    }
+}
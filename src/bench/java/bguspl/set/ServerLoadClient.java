@@ -0,0 +1,232 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Connects many clients to a RemoteServer (see its protocol and the SpectatorFeed frames) from a single thread and presses random keys at a fixed
+ * rate on every client that got a player. Reports the messages received and the time from a key press until the
+ * server reports the token of that player placed or removed on that slot. The last "slow" clients only read once a
+ * second, so the server has to skip them to snapshots. Usage (with a game running with ServerPort set and enough
+ * HumanPlayers):
+ * java -cp target/benchmarks.jar bguspl.set.ServerLoadClient -p port [-h host] [-c clients] [-s slow clients]
+ * [-r presses/s] [-d seconds] [-o file]
+ */
+public class ServerLoadClient {
+
+    private static final class Client {
+        final SocketChannel channel;
+        final ByteBuffer input = ByteBuffer.allocate(1 << 16);
+        int player = -2; // -2 until the HELLO, -1 when watching
+        int slots;
+        long[] pressTime = new long[0]; // when the key of every slot was pressed and not answered yet, 0 if not pressed
+        long nextPress;
+        boolean slow;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private static final int[] SIZES = new int[SpectatorFeed.ELAPSED + 1]; // the sizes of the messages, after the type
+    static {
+        SIZES[RemoteServer.HELLO] = 8;
+        SIZES[SpectatorFeed.CARD_PLACED] = 4;
+        SIZES[SpectatorFeed.CARD_REMOVED] = 2;
+        SIZES[SpectatorFeed.TOKEN_PLACED] = 4;
+        SIZES[SpectatorFeed.TOKEN_REMOVED] = 4;
+        SIZES[SpectatorFeed.SCORE] = 6;
+        SIZES[SpectatorFeed.COUNTDOWN] = 5;
+        SIZES[SpectatorFeed.FREEZE] = 6;
+        SIZES[SpectatorFeed.WINNERS] = 2; // followed by the players
+        SIZES[SpectatorFeed.RESET] = 0;
+        SIZES[SpectatorFeed.ELAPSED] = 4;
+    }
+
+    private static long messages;
+    private static long bytes;
+    private static long presses;
+    private static int disconnected;
+    private static long resets;
+    private static final Histogram latency = new Histogram();
+
+    public static void main(String[] args) throws IOException {
+        String host = "127.0.0.1";
+        int port = 0;
+        int connections = 100;
+        int slow = 0;
+        double rate = 10;
+        double seconds = 10;
+        Path output = Paths.get("target/server-load.json");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-h")) host = args[i + 1];
+            else if (args[i].equals("-p")) port = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-c")) connections = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-s")) slow = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-r")) rate = Double.parseDouble(args[i + 1]);
+            else if (args[i].equals("-d")) seconds = Double.parseDouble(args[i + 1]);
+            else if (args[i].equals("-o")) output = Paths.get(args[i + 1]);
+        }
+        if (port == 0) {
+            System.err.println("usage: ServerLoadClient -p port [-h host] [-c clients] [-s slow clients] [-r presses/s] [-d seconds] [-o file]");
+            System.exit(1);
+        }
+
+        Random random = new Random();
+        long interval = (long) (1_000_000_000L / rate);
+        Selector selector = Selector.open();
+        List<Client> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            Client client = new Client(channel);
+            client.nextPress = start + (long) (random.nextDouble() * interval); // spread the clients over the interval
+            client.slow = i >= connections - slow;
+            if (!client.slow) channel.register(selector, SelectionKey.OP_READ, client);
+            clients.add(client);
+        }
+
+        ByteBuffer press = ByteBuffer.allocate(Short.BYTES);
+        long deadline = start + (long) (seconds * 1_000_000_000L);
+        long nextSlowRead = start;
+        long now;
+        while ((now = System.nanoTime()) < deadline && !clients.isEmpty()) {
+            selector.select(1);
+            Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+            while (selected.hasNext()) {
+                SelectionKey key = selected.next();
+                selected.remove();
+                Client client = (Client) key.attachment();
+                if (!read(client)) {
+                    key.cancel();
+                    client.channel.close();
+                    clients.remove(client);
+                    disconnected++;
+                }
+            }
+            now = System.nanoTime();
+            if (now >= nextSlowRead) {
+                for (Client client : new ArrayList<>(clients)) {
+                    if (!client.slow) continue;
+                    boolean open;
+                    long before;
+                    do {
+                        before = bytes;
+                        open = read(client);
+                    } while (open && bytes > before);
+                    if (!open) {
+                        client.channel.close();
+                        clients.remove(client);
+                        disconnected++;
+                    }
+                }
+                nextSlowRead = now + 1_000_000_000L;
+            }
+            for (Client client : clients) {
+                if (client.player < 0 || now < client.nextPress) continue;
+                int slot = random.nextInt(client.slots);
+                press.clear();
+                press.putShort((short) slot).flip();
+                client.channel.write(press);
+                if (client.pressTime[slot] == 0 || now - client.pressTime[slot] > 1_000_000_000L) client.pressTime[slot] = now;
+                client.nextPress += interval;
+                presses++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        int players = 0;
+        for (Client client : clients) {
+            if (client.player >= 0) players++;
+            client.channel.close();
+        }
+        selector.close();
+
+        String json = toJson(connections, players, rate, elapsed);
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            out.println(json);
+        }
+        System.out.println(json);
+    }
+
+    /**
+     * Reads and handles the messages of a client.
+     *
+     * @return - false if the server closed the connection.
+     */
+    private static boolean read(Client client) throws IOException {
+        int read;
+        try {
+            read = client.channel.read(client.input);
+        } catch (IOException e) {
+            return false;
+        }
+        if (read < 0) return false;
+        bytes += read;
+        long now = System.nanoTime();
+        ByteBuffer input = client.input;
+        input.flip();
+        while (input.remaining() >= 1) {
+            int type = input.get(input.position());
+            int size = 1 + SIZES[type];
+            if (type == SpectatorFeed.WINNERS && input.remaining() >= 3) size += 2 * input.getShort(input.position() + 1);
+            if (input.remaining() < size) break;
+            input.get();
+            messages++;
+            if (type == RemoteServer.HELLO) {
+                client.player = input.getShort();
+                client.slots = input.getShort() * input.getShort();
+                client.pressTime = new long[client.slots];
+                input.getShort();
+            } else if (type == SpectatorFeed.RESET) {
+                resets++;
+            } else if (type == SpectatorFeed.TOKEN_PLACED || type == SpectatorFeed.TOKEN_REMOVED) {
+                int player = input.getShort();
+                int slot = input.getShort() & 0xffff;
+                if (player == client.player && client.pressTime[slot] != 0) {
+                    latency.record(now - client.pressTime[slot]);
+                    client.pressTime[slot] = 0;
+                }
+            } else {
+                input.position(input.position() + size - 1);
+            }
+        }
+        input.compact();
+        return true;
+    }
+
+    private static String toJson(int connections, int players, double rate, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT, "  \"connections\": %d,%n", connections));
+        json.append(String.format(Locale.ROOT, "  \"players\": %d,%n", players));
+        json.append(String.format(Locale.ROOT, "  \"disconnected\": %d,%n", disconnected));
+        json.append(String.format(Locale.ROOT, "  \"snapshots\": %d,%n", resets));
+        json.append(String.format(Locale.ROOT, "  \"pressesPerClientPerSecond\": %.1f,%n", rate));
+        json.append(String.format(Locale.ROOT, "  \"seconds\": %.3f,%n", seconds));
+        json.append(String.format(Locale.ROOT, "  \"presses\": %d,%n", presses));
+        json.append(String.format(Locale.ROOT, "  \"messagesPerSecond\": %.1f,%n", messages / seconds));
+        json.append(String.format(Locale.ROOT, "  \"bytesPerSecond\": %.1f,%n", bytes / seconds));
+        json.append(String.format(Locale.ROOT, "  \"answeredPresses\": %d,%n", latency.getCount()));
+        json.append(String.format(Locale.ROOT, "  \"pressToTokenP50Micros\": %.1f,%n", latency.getP50() / 1e3));
+        json.append(String.format(Locale.ROOT, "  \"pressToTokenP99Micros\": %.1f%n", latency.getP99() / 1e3));
+        return json.append('}').toString();
+    }
+}
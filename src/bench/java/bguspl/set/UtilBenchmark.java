@@ -0,0 +1,129 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Set detection and validation. The Util implementation is a parameter, so alternative implementations (any class
+ * with a public constructor taking a Config) can be compared side by side, e.g. -p util=bguspl.set.UtilImpl,my.Util
+ *
+ * testSets reports the time per triple, like testSet. It uses the Vector API when the jar is built with the vector
+ * profile and the benchmark JVM gets the module: -jvmArgsAppend --add-modules=jdk.incubator.vector
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    private static final int CANDIDATES = 1024; // a power of 2, half of them are legal sets
+
+    @Param({"bguspl.set.UtilImpl"})
+    public String util;
+
+    @Param({"3"})
+    public int featureSize;
+
+    @Param({"4", "5", "6"})
+    public int featureCount;
+
+    @Param({"12", "81"})
+    public int tableSize;
+
+    private Util impl;
+    private List<Integer> table;
+    private int[] tableCards;
+    private int[][] candidates;
+    private int[] first;
+    private int[] second;
+    private int[] third;
+    private boolean[] legal;
+    private int next;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        Config config = BenchmarkRunner.config("FeatureSize=" + featureSize, "FeatureCount=" + featureCount);
+        impl = (Util) Class.forName(util).getConstructor(Config.class).newInstance(config);
+
+        Random random = new Random(42);
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, random);
+        table = new ArrayList<>(deck.subList(0, Math.min(tableSize, deck.size())));
+        tableCards = table.stream().mapToInt(Integer::intValue).toArray();
+
+        candidates = new int[CANDIDATES][];
+        for (int i = 0; i < CANDIDATES; i++)
+            candidates[i] = i % 2 == 0 ? legalSet(random) : randomCards(random, config.deckSize);
+        first = Arrays.stream(candidates).mapToInt(cards -> cards[0]).toArray();
+        second = Arrays.stream(candidates).mapToInt(cards -> cards[1]).toArray();
+        third = Arrays.stream(candidates).mapToInt(cards -> cards[2]).toArray();
+        legal = new boolean[CANDIDATES];
+    }
+
+    /**
+     * @return - a random legal set: every feature is either the same on all cards or different on all cards.
+     */
+    private int[] legalSet(Random random) {
+        int[] cards = new int[featureSize];
+        for (int feature = 0; feature < featureCount; feature++) {
+            List<Integer> values = IntStream.range(0, featureSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(values, random);
+            boolean same = random.nextBoolean();
+            for (int i = 0; i < featureSize; i++)
+                cards[i] = cards[i] * featureSize + values.get(same ? 0 : i);
+        }
+        return cards;
+    }
+
+    private int[] randomCards(Random random, int deckSize) {
+        return random.ints(0, deckSize).distinct().limit(featureSize).toArray();
+    }
+
+    @Benchmark
+    public boolean testSet() {
+        return impl.testSet(candidates[next++ & (CANDIDATES - 1)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public boolean[] testSets() {
+        impl.testSets(first, second, third, legal);
+        return legal;
+    }
+
+    @Benchmark
+    public List<int[]> findOneSet() {
+        return impl.findSets(table, 1);
+    }
+
+    @Benchmark
+    public List<int[]> findAllSets() {
+        return impl.findSets(table, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int[][] cardsToFeatures() {
+        return impl.cardsToFeatures(tableCards);
+    }
+}
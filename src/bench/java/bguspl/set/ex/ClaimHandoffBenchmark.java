@@ -0,0 +1,121 @@
+package bguspl.set.ex;
+
+import bguspl.set.BenchmarkRunner;
+import bguspl.set.Env;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The round trip of a claim from a player to the dealer and back: the player places its last token
+ * (Table.acceptSetToCheck), a stand-in dealer thread polls the claim and answers (Player.accepetResponde) and the
+ * player wakes up from gotResponse.take(). Each operation also removes the tokens again, so the next claim can start.
+ * Every benchmark thread is a different player, so with -t N the dealer serves N players at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class ClaimHandoffBenchmark {
+
+    private static final int MAX_THREADS = 64;
+
+    /**
+     * How long the stand-in dealer waits for a claim before polling again (like Dealer.sleepUntilWokenOrTimeout).
+     */
+    @Param({"10", "1000"})
+    public long dealerPollMillis;
+
+    private Env env;
+    private Table table;
+    private Player[] players;
+    private final AtomicInteger nextPlayer = new AtomicInteger();
+    private Thread dealer;
+    private volatile boolean terminate;
+    private PrintStream console;
+
+    @Setup
+    public void setup() {
+        // the player reports every penalty on the console, which would dominate the measurement
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+        }));
+
+        env = BenchmarkRunner.env("TableDelaySeconds=0", "PenaltyFreezeSeconds=0", "PointFreezeSeconds=0",
+                "HumanPlayers=" + MAX_THREADS, "ComputerPlayers=0");
+        env.events.start();
+        table = new Table(env);
+        for (int slot = 0; slot < env.config.tableSize; slot++)
+            table.placeCard(slot, slot);
+        players = new Player[env.config.players];
+        for (int id = 0; id < players.length; id++)
+            players[id] = new Player(env, null, table, id, true);
+
+        dealer = new Thread(() -> {
+            while (!terminate) {
+                try {
+                    Table.setSlotsAndPlayerId claim = table.setsToCheck.poll(dealerPollMillis, TimeUnit.MILLISECONDS);
+                    if (claim != null) players[claim.playerId].accepetResponde(-1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "dealer");
+        dealer.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        terminate = true;
+        dealer.interrupt();
+        dealer.join();
+        env.events.close();
+        System.setOut(console);
+    }
+
+    /**
+     * The player of a benchmark thread, and the slots it claims.
+     */
+    @State(Scope.Thread)
+    public static class PlayerState {
+        Player player;
+        int[] slots;
+
+        @Setup
+        public void setup(ClaimHandoffBenchmark benchmark) {
+            int id = benchmark.nextPlayer.getAndIncrement() % MAX_THREADS;
+            player = benchmark.players[id];
+            slots = new int[benchmark.env.config.featureSize];
+            for (int i = 0; i < slots.length; i++)
+                slots[i] = (id + i) % benchmark.env.config.tableSize;
+        }
+    }
+
+    @Benchmark
+    public void claimRoundTrip(PlayerState state) {
+        for (int slot : state.slots)
+            state.player.placeToken(slot); // the last one blocks until the dealer answers
+        for (int slot : state.slots)
+            state.player.removeToken(slot);
+    }
+}
@@ -0,0 +1,113 @@
+package bguspl.set.ex;
+
+import bguspl.set.BenchmarkRunner;
+import bguspl.set.Env;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contention on the table slot locks: every benchmark thread is a different player placing, removing and checking
+ * tokens on random slots of a full table. Run it with different thread counts to see how the locking scales, e.g.
+ * for t in 2 4 8 16 32 64; do java -jar target/benchmarks.jar TableBenchmark -t $t; done
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class TableBenchmark {
+
+    private static final int MAX_THREADS = 64;
+
+    /**
+     * The table grid (rows x columns): the default 12 slots, and a large grid.
+     */
+    @Param({"3x4", "12x12"})
+    public String grid;
+
+    private Env env;
+    private Table table;
+    private final AtomicInteger nextPlayer = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        String[] dimensions = grid.split("x");
+        env = BenchmarkRunner.env("Rows=" + dimensions[0], "Columns=" + dimensions[1], "HumanPlayers=0",
+                "ComputerPlayers=" + MAX_THREADS, "TableDelaySeconds=0", "FeatureCount=6");
+        env.events.start();
+        table = new Table(env);
+        for (int slot = 0; slot < env.config.tableSize; slot++)
+            table.placeCard(slot, slot);
+    }
+
+    @TearDown
+    public void tearDown() {
+        env.events.close();
+    }
+
+    /**
+     * The player of a benchmark thread, and the random slots it plays on.
+     */
+    @State(Scope.Thread)
+    public static class PlayerState {
+        private static final int SLOTS = 1024; // a power of 2
+
+        int player;
+        int[] slots;
+        int next;
+
+        @Setup
+        public void setup(TableBenchmark benchmark) {
+            player = benchmark.nextPlayer.getAndIncrement() % MAX_THREADS;
+            Random random = new Random(player);
+            slots = random.ints(SLOTS, 0, benchmark.env.config.tableSize).toArray();
+        }
+
+        int nextSlot() {
+            return slots[next++ & (SLOTS - 1)];
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearTokens() {
+        for (int slot = 0; slot < env.config.tableSize; slot++)
+            for (int player = 0; player < env.config.players; player++)
+                table.removeToken(player, slot);
+    }
+
+    @Benchmark
+    public boolean placeAndRemoveToken(PlayerState state) {
+        int slot = state.nextSlot();
+        table.placeToken(state.player, slot);
+        return table.removeToken(state.player, slot);
+    }
+
+    @Benchmark
+    public boolean playerHasToken(PlayerState state) {
+        return table.playerHasToken(state.player, state.nextSlot());
+    }
+
+    @Benchmark
+    public boolean toggleToken(PlayerState state) {
+        int slot = state.nextSlot();
+        return table.playerHasToken(state.player, slot) ? table.removeToken(state.player, slot) : table.placeToken(state.player, slot);
+    }
+}
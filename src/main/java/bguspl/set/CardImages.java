@@ -0,0 +1,368 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.ImageObserver;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Holds the card images, pre-scaled to the cell size, in a single atlas image (one cell per card, top to bottom), so
+ * painting a card is a plain copy of a sub-rectangle.
+ *
+ * The atlas is cached on disk as a raw ARGB file, keyed by the deck parameters and the cell size. When a matching
+ * cache file exists it is read into the atlas, otherwise the card images are decoded on a few background threads (so
+ * the window and the dealer do not wait for the whole deck) and the cache file is written once they are all done.
+ * Until the image of a card is ready, the empty card image is drawn in its place. Cards whose image is missing are
+ * cached as empty cards and marked as such, so they are decoded again (and the cache rewritten if they are found) the
+ * next time the atlas is loaded.
+ *
+ * Decks whose atlas would take more than {@link #MAX_ATLAS_PIXELS} pixels are not held in an atlas (nor cached on
+ * disk): each card is decoded into its own image when it is placed on the table, and only the most recently drawn cards
+ * are kept.
+ */
+class CardImages {
+
+    /**
+     * The cache file header: magic, version, feature size, feature count, deck size, cell width, cell height. It is
+     * followed by one int per card (1 if the card image is missing) and then by the atlas pixels.
+     */
+    private static final int MAGIC = 0x53455441; // "SETA"
+    private static final int VERSION = 2;
+    private static final int HEADER_INTS = 7;
+
+    /**
+     * The largest atlas that is kept in memory (64 MB of ARGB pixels, about 380 cards of the default cell size).
+     */
+    static final long MAX_ATLAS_PIXELS = 1L << 24;
+
+    private final Logger logger;
+    private final Config config;
+    private final int cellWidth;
+    private final int cellHeight;
+
+    /**
+     * The image drawn for empty slots, and for cards that were not rendered yet (already scaled to the cell size).
+     */
+    private final BufferedImage placeholder;
+
+    /**
+     * The card images and their pixels (cellWidth * cellHeight ints per card, card after card), or null if the deck is
+     * too large for an atlas.
+     */
+    private final BufferedImage atlas;
+    private final int[] pixels;
+
+    /**
+     * true for each card whose image could not be loaded (its cell holds the empty card image), or null if there is no
+     * atlas.
+     */
+    private final boolean[] missing;
+
+    /**
+     * The number of missing cards in the cache file the atlas was loaded from, or -1 if it was not loaded from a cache.
+     */
+    private int cachedMissing = -1;
+
+    /**
+     * 1 for each card whose cell in the atlas is ready to be drawn.
+     */
+    private final AtomicIntegerArray ready;
+
+    /**
+     * When there is no atlas: the images of the most recently drawn cards, least recently drawn first.
+     */
+    private final Map<Integer, BufferedImage> cells;
+
+    /**
+     * The cards waiting to be decoded. Cards that are needed on the table are pushed to the front.
+     */
+    private final LinkedBlockingDeque<Integer> pending = new LinkedBlockingDeque<>();
+
+    private final AtomicInteger remaining;
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Called (from a loader thread) with the card id whenever a card image becomes ready.
+     */
+    private final IntConsumer onLoaded;
+
+    CardImages(Logger logger, Config config, IntConsumer onLoaded) {
+        this.logger = logger;
+        this.config = config;
+        this.onLoaded = onLoaded;
+        this.cellWidth = config.cellWidth;
+        this.cellHeight = config.cellHeight;
+        this.ready = new AtomicIntegerArray(config.deckSize);
+        this.remaining = new AtomicInteger(config.deckSize);
+
+        assert config.featureSize < 10; // otherwise there will be naming conflicts
+        placeholder = scaled(new ImageIcon(resource("cards/empty_card.png")).getImage());
+        ImageIO.setUseCache(false); // decode in memory instead of through temporary files
+
+        long cellPixels = (long) cellWidth * cellHeight;
+        if (config.deckSize * cellPixels > MAX_ATLAS_PIXELS) {
+            atlas = null;
+            pixels = null;
+            missing = null;
+            int capacity = (int) Math.max(2L * config.tableSize, MAX_ATLAS_PIXELS / cellPixels);
+            cells = Collections.synchronizedMap(new LinkedHashMap<Integer, BufferedImage>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+                    return size() > capacity;
+                }
+            });
+            logger.info("the deck is too large for a card atlas, keeping the images of up to " + capacity + " cards");
+            startLoaders(Math.min(Runtime.getRuntime().availableProcessors(), config.tableSize), this::loadRequested);
+            return;
+        }
+
+        cells = null;
+        atlas = new BufferedImage(cellWidth, config.deckSize * cellHeight, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) atlas.getRaster().getDataBuffer()).getData();
+        missing = new boolean[config.deckSize];
+
+        if (loadCache()) {
+            cachedMissing = 0;
+            for (int card = 0; card < config.deckSize; card++)
+                if (missing[card]) {
+                    pending.add(card); // try again, the image may have been added since
+                    cachedMissing++;
+                } else ready.set(card, 1);
+            remaining.set(cachedMissing);
+            logger.info("card atlas was loaded from " + cacheFile() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+            if (cachedMissing == 0) return;
+        } else {
+            for (int card = 0; card < config.deckSize; card++)
+                pending.add(card);
+        }
+        startLoaders(Math.min(Runtime.getRuntime().availableProcessors(), pending.size()), this::loadPending);
+    }
+
+    private void startLoaders(int count, Runnable loop) {
+        for (int i = 0; i < Math.max(1, count); i++) {
+            Thread loader = new Thread(loop, "card-loader-" + i);
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    private URL resource(String filename) {
+        URL imageResource = getClass().getClassLoader().getResource(filename);
+        if (imageResource == null)
+            throw new RuntimeException(new FileNotFoundException(filename));
+        return imageResource;
+    }
+
+    private BufferedImage scaled(Image image) {
+        BufferedImage cell = new BufferedImage(cellWidth, cellHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = cell.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, cellWidth, cellHeight, null);
+        g.dispose();
+        return cell;
+    }
+
+    /**
+     * Decodes the image of a card, scaled to the cell size.
+     *
+     * @return - the image, or the placeholder if it could not be loaded.
+     */
+    private BufferedImage decode(int card) {
+        String filename = "cards/" + UserInterfaceSwing.intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png";
+        try {
+            return scaled(ImageIO.read(resource(filename)));
+        } catch (IOException | RuntimeException e) {
+            logger.severe("cannot load card image " + filename + ": " + e.getMessage());
+            return placeholder;
+        }
+    }
+
+    /**
+     * The main loop of the loader threads: renders cards into the atlas until there are no more pending cards.
+     */
+    private void loadPending() {
+        Integer card;
+        while ((card = pending.pollFirst()) != null) {
+            if (ready.get(card) != 0) continue; // was already loaded after being prioritized
+
+            BufferedImage cell = decode(card);
+            // a prioritized card may be rendered by two loaders: both write the same pixels, only one publishes them
+            cell.getRGB(0, 0, cellWidth, cellHeight, pixels, card * cellWidth * cellHeight, cellWidth);
+            missing[card] = cell == placeholder;
+            if (!ready.compareAndSet(card, 0, 1)) continue;
+
+            onLoaded.accept(card);
+            if (remaining.decrementAndGet() == 0) {
+                int missingCount = 0;
+                for (boolean isMissing : missing)
+                    if (isMissing) missingCount++;
+                logger.info("all card images were loaded in " + (System.currentTimeMillis() - startTime) + " ms"
+                        + (missingCount > 0 ? ", " + missingCount + " of them are missing" : ""));
+                if (missingCount != cachedMissing) saveCache(); // unless nothing changed since the cache was loaded
+            }
+        }
+    }
+
+    /**
+     * The main loop of the loader threads when there is no atlas: decodes the cards that are needed on the table.
+     */
+    private void loadRequested() {
+        try {
+            while (true) {
+                int card = pending.takeFirst();
+                if (cells.containsKey(card)) continue; // was requested more than once
+                cells.put(card, decode(card));
+                onLoaded.accept(card);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private Path cacheFile() {
+        if (config.cardCacheDirectory.isEmpty()) return null;
+        return Paths.get(config.cardCacheDirectory, "cards-" + config.featureSize + "x" + config.featureCount
+                + "-" + cellWidth + "x" + cellHeight + ".argb");
+    }
+
+    private int[] header() {
+        return new int[]{MAGIC, VERSION, config.featureSize, config.featureCount, config.deckSize, cellWidth, cellHeight};
+    }
+
+    /**
+     * Reads the atlas and the missing cards from the cache file, if there is one matching the current deck and cell
+     * size.
+     *
+     * @return - true iff the atlas was loaded.
+     */
+    private boolean loadCache() {
+        Path file = cacheFile();
+        if (file == null || !Files.isRegularFile(file)) return false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != (HEADER_INTS + config.deckSize + (long) pixels.length) * Integer.BYTES) return false;
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            int[] fields = new int[HEADER_INTS];
+            read(channel, buffer, fields);
+            if (!Arrays.equals(fields, header())) return false;
+
+            int[] flags = new int[config.deckSize];
+            read(channel, buffer, flags);
+            read(channel, buffer, pixels);
+            for (int card = 0; card < config.deckSize; card++)
+                missing[card] = flags[card] != 0;
+            return true;
+        } catch (IOException e) {
+            logger.severe("cannot read card atlas cache " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the atlas to the cache file (through a temporary file, so a partial file is never picked up).
+     */
+    private void saveCache() {
+        Path file = cacheFile();
+        if (file == null) return;
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+                int[] flags = new int[config.deckSize];
+                for (int card = 0; card < config.deckSize; card++)
+                    flags[card] = missing[card] ? 1 : 0;
+                write(channel, buffer, header());
+                write(channel, buffer, flags);
+                write(channel, buffer, pixels);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("card atlas was saved to " + file);
+        } catch (IOException e) {
+            logger.severe("cannot write card atlas cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fills an array with the next ints of a file, through a buffer that may be smaller than the array.
+     */
+    private static void read(FileChannel channel, ByteBuffer buffer, int[] ints) throws IOException {
+        for (int offset = 0; offset < ints.length; ) {
+            int count = Math.min(ints.length - offset, buffer.capacity() / Integer.BYTES);
+            buffer.clear();
+            buffer.limit(count * Integer.BYTES);
+            while (buffer.hasRemaining())
+                if (channel.read(buffer) < 0) throw new EOFException();
+            buffer.flip();
+            buffer.asIntBuffer().get(ints, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Writes an array of ints to a file, through a buffer that may be smaller than the array.
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer, int[] ints) throws IOException {
+        for (int offset = 0; offset < ints.length; ) {
+            int count = Math.min(ints.length - offset, buffer.capacity() / Integer.BYTES);
+            buffer.clear();
+            buffer.asIntBuffer().put(ints, offset, count);
+            buffer.limit(count * Integer.BYTES);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            offset += count;
+        }
+    }
+
+    /**
+     * Moves a card to the front of the loading order (e.g. because it was just placed on the table).
+     *
+     * @param card - the card id.
+     */
+    void prioritize(int card) {
+        if (cells != null ? !cells.containsKey(card) : ready.get(card) == 0) pending.addFirst(card);
+    }
+
+    /**
+     * Draws a card (unscaled, straight from the atlas or its own image) with its top left corner at the given point.
+     *
+     * @param card - the card id, or null for an empty slot.
+     * @post - the placeholder is drawn if the card is null or its image is not ready.
+     */
+    void draw(Graphics g, Integer card, int x, int y, ImageObserver observer) {
+        if (card != null && cells != null) {
+            BufferedImage cell = cells.get(card);
+            if (cell == null) prioritize(card); // was dropped to make room for other cards
+            g.drawImage(cell != null ? cell : placeholder, x, y, observer);
+            return;
+        }
+        if (card == null || ready.get(card) == 0) {
+            g.drawImage(placeholder, x, y, observer);
+            return;
+        }
+        int top = card * cellHeight;
+        g.drawImage(atlas, x, y, x + cellWidth, y + cellHeight, 0, top, cellWidth, top + cellHeight, observer);
+    }
+}
@@ -0,0 +1,117 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The card that completes every pair of cards to a set (config.featureSize = 3), precomputed into a file that is
+ * memory mapped, so a completion is a single lookup and all the game processes on a machine share one copy of the
+ * table in the page cache.
+ *
+ * The file is a header (magic, version, feature size, feature count, deck size) followed by deckSize * deckSize
+ * shorts, the completion of the pair (a, b) at index a * deckSize + b. The file is created the first time it is
+ * opened with a deck, and replaced if it was created for another deck.
+ */
+public class CompletionTable {
+
+    private static final int MAGIC = 0x53455450; // "SETP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32; // the entries start aligned
+
+    private final int deckSize;
+    private final MappedByteBuffer entries;
+
+    private CompletionTable(int deckSize, MappedByteBuffer entries) {
+        this.deckSize = deckSize;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens the table of the deck, creating the file if it does not exist or does not match the deck.
+     *
+     * @param file   - the table file.
+     * @param config - the deck settings.
+     * @return - the table.
+     * @throws IllegalArgumentException - if the sets of the deck are not 3 cards, or its card ids do not fit in a short.
+     */
+    public static CompletionTable open(Path file, Config config) throws IOException {
+        if (config.featureSize != 3)
+            throw new IllegalArgumentException("a completion table needs sets of 3 cards, not " + config.featureSize);
+        if (config.deckSize > Short.MAX_VALUE)
+            throw new IllegalArgumentException("a deck of " + config.deckSize + " cards is too large for a completion table");
+        long size = HEADER_SIZE + 2L * config.deckSize * config.deckSize;
+
+        CompletionTable table = map(file, config, size);
+        if (table != null) return table;
+        create(file, config, size);
+        table = map(file, config, size);
+        if (table == null) throw new IOException("the completion table " + file + " was replaced while it was opened");
+        return table;
+    }
+
+    /**
+     * @return - the table in the file, or null if there is no file or it is for another deck.
+     */
+    private static CompletionTable map(Path file, Config config, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != size) return null;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != config.featureSize
+                    || header.getInt() != config.featureCount || header.getInt() != config.deckSize)
+                return null;
+            return new CompletionTable(config.deckSize, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the table into a temporary file and moves it in place at once, so the processes opening the table
+     * meanwhile never see a partial one.
+     */
+    private static void create(Path file, Config config, long size) throws IOException {
+        int deckSize = config.deckSize;
+        int[][] features = new int[deckSize][];
+        Util util = new UtilImpl(config);
+        for (int card = 0; card < deckSize; card++) features[card] = util.cardToFeatures(card);
+
+        file = file.toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + "." + System.nanoTime() + ".tmp"); // one per process
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(config.featureSize).putInt(config.featureCount).putInt(deckSize);
+                buffer.position(HEADER_SIZE);
+                for (int a = 0; a < deckSize; a++)
+                    for (int b = 0; b < deckSize; b++) {
+                        int third = 0;
+                        for (int i = 0; i < config.featureCount; i++) // the value that makes the sum divisible by 3
+                            third = third * 3 + (6 - features[a][i] - features[b][i]) % 3;
+                        buffer.putShort((short) third);
+                    }
+                buffer.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return - the card that completes the cards a and b to a set.
+     */
+    public int complete(int a, int b) {
+        return entries.getShort(HEADER_SIZE + 2 * (a * deckSize + b));
+    }
+}
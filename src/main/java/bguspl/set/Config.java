@@ -7,6 +7,7 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,6 +22,11 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * The seed of the deck shuffling and the computer players (chosen at random if it is not set)
+     */
+    public final long randomSeed;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -86,6 +92,21 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The number of milliseconds the player threads get, all together, to terminate at the end of the game
+     */
+    public final long shutdownTimeoutMillis;
+
+    /**
+     * The number of milliseconds a computer player waits between key presses
+     */
+    public final long computerKeyDelayMillis;
+
+    /**
+     * The chance (0 to 1) that a computer player goes for a legal set on the table instead of pressing a random key
+     */
+    public final double computerSetProbability;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -132,6 +153,67 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The number of times per second the user interface applies pending display updates
+     */
+    public final int frameRate;
+
+    /**
+     * The directory in which the card images, scaled to the cell size, are cached (empty for no cache)
+     */
+    public final String cardCacheDirectory;
+
+    /**
+     * The directory in which a binary journal of the game events is written (empty for no journal)
+     */
+    public final String journalDirectory;
+
+    /**
+     * The directory in which the results of all the games are kept (empty for no leaderboard)
+     */
+    public final String leaderboardDirectory;
+
+    /**
+     * The file the game is saved to periodically, so it can be resumed (empty for no checkpoints)
+     */
+    public final String checkpointFile;
+
+    /**
+     * The number of milliseconds between checkpoints
+     */
+    public final long checkpointMillis;
+
+    /**
+     * The address and port of the server for remote players (no server if the port is 0)
+     */
+    public final String serverAddress;
+    public final int serverPort;
+
+    /**
+     * The number of threads shared by all the rooms, when hosting many games (see Rooms)
+     */
+    public final int roomThreads;
+
+    /**
+     * The number of regions (bands of rows) the table is split into, each with its own dealer worker (1 for a single dealer)
+     */
+    public final int regions;
+
+    /**
+     * The number of games played one after the other in the same window (0 to play until the window is closed)
+     */
+    public final int games;
+
+    /**
+     * The maximal number of milliseconds to warm up the claim path before the game starts (0 for no warm up)
+     */
+    public final long warmupMillis;
+
+    /**
+     * The file of the precomputed completions of all the card pairs, shared by the games on this machine (empty for none)
+     */
+    public final String completionTableFile;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -155,7 +237,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -193,6 +275,10 @@ public class Config {
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
 
+        String seed = properties.getProperty("RandomSeed", "").trim();
+        randomSeed = seed.isEmpty() ? new Random().nextLong() : Long.parseLong(seed);
+        logger.info("random seed: " + randomSeed);
+
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
@@ -210,6 +296,11 @@ public class Config {
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        shutdownTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("ShutdownTimeoutSeconds", "5")) * 1000.0);
+        computerKeyDelayMillis = (long) (Double.parseDouble(properties.getProperty("ComputerKeyDelaySeconds", "0.002")) * 1000.0);
+        computerSetProbability = Double.parseDouble(properties.getProperty("ComputerSetProbability", "0"));
+        if (computerSetProbability < 0 || computerSetProbability > 1)
+            logger.severe("invalid computer set probability: " + computerSetProbability);
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -224,6 +315,38 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        frameRate = Integer.parseInt(properties.getProperty("FrameRate", "60"));
+        if (frameRate <= 0)
+            logger.severe("invalid frame rate: " + frameRate);
+        cardCacheDirectory = properties.getProperty("CardCacheDirectory", "./cache/").trim();
+        games = Integer.parseInt(properties.getProperty("Games", "1"));
+        if (games < 0)
+            logger.severe("invalid number of games: " + games);
+        String journal = properties.getProperty("JournalDirectory", "").trim();
+        String checkpoint = properties.getProperty("CheckpointFile", "").trim();
+        if (games != 1 && !(journal.isEmpty() && checkpoint.isEmpty())) {
+            // both follow a single game from its random seed, a rematch would be mixed into the same files
+            logger.severe("the journal and the checkpoints are turned off, they cannot record " + (games == 0 ? "unlimited" : games) + " games");
+            journal = "";
+            checkpoint = "";
+        }
+        journalDirectory = journal;
+        leaderboardDirectory = properties.getProperty("LeaderboardDirectory", "").trim();
+        checkpointFile = checkpoint;
+        checkpointMillis = (long) (Double.parseDouble(properties.getProperty("CheckpointSeconds", "5")) * 1000.0);
+        serverAddress = properties.getProperty("ServerAddress", "127.0.0.1").trim();
+        serverPort = Integer.parseInt(properties.getProperty("ServerPort", "0"));
+        if (serverPort < 0 || serverPort > 65535)
+            logger.severe("invalid server port: " + serverPort);
+        String threads = properties.getProperty("RoomThreads", "").trim();
+        roomThreads = threads.isEmpty() ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+        if (roomThreads <= 0)
+            logger.severe("invalid number of room threads: " + roomThreads);
+        regions = Integer.parseInt(properties.getProperty("Regions", "1"));
+        if (regions < 1 || regions > tableSize)
+            logger.severe("invalid number of regions: " + regions);
+        warmupMillis = (long) (Double.parseDouble(properties.getProperty("WarmupSeconds", "0")) * 1000.0);
+        completionTableFile = properties.getProperty("CompletionTableFile", "").trim();
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
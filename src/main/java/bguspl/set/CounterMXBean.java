@@ -0,0 +1,9 @@
+package bguspl.set;
+
+/**
+ * The JMX view of a Counter.
+ */
+public interface CounterMXBean {
+
+    long getCount();
+}
@@ -6,13 +6,27 @@ public class Env {
 
     public final Logger logger;
     public final Config config;
-    public final UserInterface ui;
+    public final UserInterface ui; // null if the game runs without a user interface (e.g. in a room)
     public final Util util;
 
+    /**
+     * The game entities publish their state changes here, the user interface and the logger are subscribed to it.
+     */
+    public final GameEventBus events;
+
+    /**
+     * The measurements taken while the game runs.
+     */
+    public final Metrics metrics;
+
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.metrics = new Metrics();
+        this.events = new GameEventBus(logger);
+        if (ui != null) events.subscribe(new UserInterfaceListener(ui));
+        events.subscribe(new GameEventLogger(logger));
     }
 }
@@ -0,0 +1,339 @@
+package bguspl.set;
+
+/**
+ * A change in the game state, published by the game entities through the GameEventBus.
+ */
+public abstract class GameEvent {
+
+    /**
+     * The time the event was created at (System.nanoTime()).
+     */
+    public final long time;
+
+    protected GameEvent() {
+        this(System.nanoTime());
+    }
+
+    protected GameEvent(long time) {
+        this.time = time;
+    }
+
+    /**
+     * Calls the listener method matching the type of this event.
+     *
+     * @param listener - the listener to notify.
+     */
+    public abstract void dispatchTo(GameEventListener listener);
+
+    /**
+     * A player pressed the key of a slot (or the computer player pressed it for him).
+     */
+    public static final class KeyPressed extends GameEvent {
+        public final int player;
+        public final int slot;
+
+        public KeyPressed(int player, int slot) {
+            this(System.nanoTime(), player, slot);
+        }
+
+        public KeyPressed(long time, int player, int slot) {
+            super(time);
+            this.player = player;
+            this.slot = slot;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onKeyPressed(this);
+        }
+    }
+
+    /**
+     * A card was placed on the table.
+     */
+    public static final class CardPlaced extends GameEvent {
+        public final int card;
+        public final int slot;
+
+        public CardPlaced(int card, int slot) {
+            this(System.nanoTime(), card, slot);
+        }
+
+        public CardPlaced(long time, int card, int slot) {
+            super(time);
+            this.card = card;
+            this.slot = slot;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onCardPlaced(this);
+        }
+    }
+
+    /**
+     * A card was removed from the table.
+     */
+    public static final class CardRemoved extends GameEvent {
+        public final int card;
+        public final int slot;
+
+        public CardRemoved(int card, int slot) {
+            this(System.nanoTime(), card, slot);
+        }
+
+        public CardRemoved(long time, int card, int slot) {
+            super(time);
+            this.card = card;
+            this.slot = slot;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onCardRemoved(this);
+        }
+    }
+
+    /**
+     * A player placed a token on a slot.
+     */
+    public static final class TokenPlaced extends GameEvent {
+        public final int player;
+        public final int slot;
+
+        public TokenPlaced(int player, int slot) {
+            this(System.nanoTime(), player, slot);
+        }
+
+        public TokenPlaced(long time, int player, int slot) {
+            super(time);
+            this.player = player;
+            this.slot = slot;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onTokenPlaced(this);
+        }
+    }
+
+    /**
+     * A token of a player was removed from a slot.
+     */
+    public static final class TokenRemoved extends GameEvent {
+        public final int player;
+        public final int slot;
+
+        public TokenRemoved(int player, int slot) {
+            this(System.nanoTime(), player, slot);
+        }
+
+        public TokenRemoved(long time, int player, int slot) {
+            super(time);
+            this.player = player;
+            this.slot = slot;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onTokenRemoved(this);
+        }
+    }
+
+    /**
+     * A player submitted the slots of its tokens to the dealer.
+     */
+    public static final class ClaimSubmitted extends GameEvent {
+        public final int player;
+        public final int[] slots;
+
+        public ClaimSubmitted(int player, int[] slots) {
+            this(System.nanoTime(), player, slots);
+        }
+
+        public ClaimSubmitted(long time, int player, int[] slots) {
+            super(time);
+            this.player = player;
+            this.slots = slots;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onClaimSubmitted(this);
+        }
+    }
+
+    /**
+     * The dealer checked the claim of a player.
+     */
+    public static final class ClaimResolved extends GameEvent {
+        public final int player;
+        public final int[] slots;
+        public final boolean legal;
+
+        public ClaimResolved(int player, int[] slots, boolean legal) {
+            this(System.nanoTime(), player, slots, legal);
+        }
+
+        public ClaimResolved(long time, int player, int[] slots, boolean legal) {
+            super(time);
+            this.player = player;
+            this.slots = slots;
+            this.legal = legal;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onClaimResolved(this);
+        }
+    }
+
+    /**
+     * The turn timed out and the dealer is returning the cards on the table to the deck.
+     */
+    public static final class Reshuffle extends GameEvent {
+
+        public Reshuffle() {}
+
+        public Reshuffle(long time) {
+            super(time);
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onReshuffle(this);
+        }
+    }
+
+    /**
+     * The turn countdown was updated.
+     */
+    public static final class CountdownChanged extends GameEvent {
+        public final long millies;
+        public final boolean warn;
+
+        public CountdownChanged(long millies, boolean warn) {
+            this(System.nanoTime(), millies, warn);
+        }
+
+        public CountdownChanged(long time, long millies, boolean warn) {
+            super(time);
+            this.millies = millies;
+            this.warn = warn;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onCountdownChanged(this);
+        }
+    }
+
+    /**
+     * The time since the last action (reshuffle or set collected) was updated, in the mode without a countdown.
+     */
+    public static final class ElapsedChanged extends GameEvent {
+        public final long millies;
+
+        public ElapsedChanged(long millies) {
+            this(System.nanoTime(), millies);
+        }
+
+        public ElapsedChanged(long time, long millies) {
+            super(time);
+            this.millies = millies;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onElapsedChanged(this);
+        }
+    }
+
+    /**
+     * The score of a player was changed.
+     */
+    public static final class ScoreChanged extends GameEvent {
+        public final int player;
+        public final int score;
+
+        public ScoreChanged(int player, int score) {
+            this(System.nanoTime(), player, score);
+        }
+
+        public ScoreChanged(long time, int player, int score) {
+            super(time);
+            this.player = player;
+            this.score = score;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onScoreChanged(this);
+        }
+    }
+
+    /**
+     * The remaining freeze time of a player was changed (0 when the player is no longer frozen).
+     */
+    public static final class FreezeChanged extends GameEvent {
+        public final int player;
+        public final long millies;
+
+        public FreezeChanged(int player, long millies) {
+            this(System.nanoTime(), player, millies);
+        }
+
+        public FreezeChanged(long time, int player, long millies) {
+            super(time);
+            this.player = player;
+            this.millies = millies;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onFreezeChanged(this);
+        }
+    }
+
+    /**
+     * A new game started in the same session, after the winners of the previous one were announced.
+     */
+    public static final class NewGame extends GameEvent {
+        public final int game;
+
+        public NewGame(int game) {
+            this(System.nanoTime(), game);
+        }
+
+        public NewGame(long time, int game) {
+            super(time);
+            this.game = game;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onNewGame(this);
+        }
+    }
+
+    /**
+     * The game ended with the given winner(s).
+     */
+    public static final class WinnersAnnounced extends GameEvent {
+        public final int[] players;
+
+        public WinnersAnnounced(int[] players) {
+            this(System.nanoTime(), players);
+        }
+
+        public WinnersAnnounced(long time, int[] players) {
+            super(time);
+            this.players = players;
+        }
+
+        @Override
+        public void dispatchTo(GameEventListener listener) {
+            listener.onWinnersAnnounced(this);
+        }
+    }
+}
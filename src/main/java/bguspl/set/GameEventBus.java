@@ -0,0 +1,103 @@
+package bguspl.set;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Delivers the game events to the subscribers (the user interface, the logger etc.).
+ *
+ * Once started, publishing an event only adds it to a lock-free queue, and the listeners are called one event at a
+ * time, in publishing order, from a single "event-bus" thread. So it is cheap to publish from inside a critical section.
+ * A bus that was not started (or was already closed) calls the listeners on the publishing thread.
+ */
+public class GameEventBus {
+
+    private final Logger logger;
+    private final List<GameEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<GameEvent> queue = new ConcurrentLinkedQueue<>();
+
+    private ThreadLogger dispatcher;
+    private volatile boolean running;
+    private volatile boolean waiting;
+
+    public GameEventBus(Logger logger) {
+        this.logger = logger;
+    }
+
+    public void subscribe(GameEventListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(GameEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publishes an event to all the subscribers.
+     *
+     * @param event - the event.
+     */
+    public void publish(GameEvent event) {
+        if (!running) {
+            dispatch(event);
+            return;
+        }
+        queue.offer(event);
+        if (waiting) LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * Starts delivering the events asynchronously.
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        dispatcher = new ThreadLogger(this::dispatchLoop, "event-bus", logger);
+        dispatcher.setDaemon(true);
+        dispatcher.startWithLog();
+    }
+
+    /**
+     * Delivers all the pending events and stops the dispatcher thread.
+     */
+    public synchronized void close() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.joinWithLog();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        drain(); // events that were queued while closing
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            drain();
+            waiting = true;
+            if (running && queue.isEmpty()) LockSupport.park(this);
+            waiting = false;
+        }
+        drain();
+    }
+
+    private void drain() {
+        GameEvent event;
+        while ((event = queue.poll()) != null)
+            dispatch(event);
+    }
+
+    private void dispatch(GameEvent event) {
+        for (GameEventListener listener : listeners) {
+            try {
+                event.dispatchTo(listener);
+            } catch (RuntimeException e) {
+                logger.severe("game event listener failed on " + event.getClass().getSimpleName() + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package bguspl.set;
+
+/**
+ * A subscriber of the GameEventBus. Every method does nothing by default, so a listener only overrides the events it
+ * is interested in.
+ */
+public interface GameEventListener {
+
+    default void onKeyPressed(GameEvent.KeyPressed event) {}
+
+    default void onCardPlaced(GameEvent.CardPlaced event) {}
+
+    default void onCardRemoved(GameEvent.CardRemoved event) {}
+
+    default void onTokenPlaced(GameEvent.TokenPlaced event) {}
+
+    default void onTokenRemoved(GameEvent.TokenRemoved event) {}
+
+    default void onClaimSubmitted(GameEvent.ClaimSubmitted event) {}
+
+    default void onClaimResolved(GameEvent.ClaimResolved event) {}
+
+    default void onReshuffle(GameEvent.Reshuffle event) {}
+
+    default void onCountdownChanged(GameEvent.CountdownChanged event) {}
+
+    default void onElapsedChanged(GameEvent.ElapsedChanged event) {}
+
+    default void onScoreChanged(GameEvent.ScoreChanged event) {}
+
+    default void onFreezeChanged(GameEvent.FreezeChanged event) {}
+
+    default void onWinnersAnnounced(GameEvent.WinnersAnnounced event) {}
+
+    default void onNewGame(GameEvent.NewGame event) {}
+}
@@ -0,0 +1,33 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Logs the game events that are not shown on the user interface (the user interface calls are logged by the
+ * UserInterfaceDecorator).
+ */
+public class GameEventLogger implements GameEventListener {
+
+    private final Logger logger;
+
+    public GameEventLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onClaimSubmitted(GameEvent.ClaimSubmitted event) {
+        logger.severe("player " + (event.player + 1) + " claims a set on slots " + Arrays.toString(event.slots));
+    }
+
+    @Override
+    public void onClaimResolved(GameEvent.ClaimResolved event) {
+        logger.severe("player " + (event.player + 1) + " claim on slots " + Arrays.toString(event.slots)
+                + (event.legal ? " is a legal set" : " is not a legal set"));
+    }
+
+    @Override
+    public void onReshuffle(GameEvent.Reshuffle event) {
+        logger.severe("turn timed out, reshuffling");
+    }
+}
@@ -0,0 +1,275 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact binary record of all the game events, for offline analysis and replays. The journal is subscribed to the
+ * GameEventBus, so it is written on the event bus thread and the game threads never wait for it. The file is written
+ * through memory mapped chunks and is cut to its real length when the journal is closed.
+ *
+ * The file starts with a header (see Reader for its fields), followed by the events. Every event is a type byte and
+ * the time of the event (System.nanoTime(), compare it with the start time of the header), followed by its fields:
+ * ints for cards, slots, players and scores, longs for times, a byte for booleans and an int count before arrays.
+ * A zero type byte (or the end of the file) marks the end of the journal.
+ */
+public class GameJournal implements GameEventListener, Closeable {
+
+    static final int MAGIC = 0x5345544A; // "SETJ"
+    static final int VERSION = 2;
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private static final byte END = 0;
+    private static final byte CARD_PLACED = 1;
+    private static final byte CARD_REMOVED = 2;
+    private static final byte TOKEN_PLACED = 3;
+    private static final byte TOKEN_REMOVED = 4;
+    private static final byte CLAIM_SUBMITTED = 5;
+    private static final byte CLAIM_RESOLVED = 6;
+    private static final byte RESHUFFLE = 7;
+    private static final byte COUNTDOWN_CHANGED = 8;
+    private static final byte SCORE_CHANGED = 9;
+    private static final byte FREEZE_CHANGED = 10;
+    private static final byte WINNERS_ANNOUNCED = 11;
+    private static final byte KEY_PRESSED = 12;
+    private static final byte ELAPSED_CHANGED = 13;
+
+    private final FileChannel channel;
+    private MappedByteBuffer chunk;
+    private long chunkStart; // the file position of the current chunk
+
+    /**
+     * Creates a journal file (replacing an existing one) and writes its header.
+     *
+     * @param file   - the journal file.
+     * @param config - the game configuration, its card and table dimensions and random seed are written to the header.
+     */
+    public GameJournal(Path file, Config config) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+        chunk.putInt(MAGIC).putInt(VERSION);
+        chunk.putInt(config.featureSize).putInt(config.featureCount);
+        chunk.putInt(config.rows).putInt(config.columns);
+        chunk.putInt(config.humanPlayers).putInt(config.computerPlayers);
+        chunk.putLong(config.randomSeed);
+        chunk.putLong(System.currentTimeMillis()).putLong(System.nanoTime());
+    }
+
+    /**
+     * Makes room for a record in the current chunk, mapping the next chunk of the file if needed.
+     *
+     * @param size - the size of the record in bytes.
+     * @return - the buffer to write the record to.
+     */
+    private ByteBuffer reserve(int size) {
+        if (chunk.remaining() < size + 1) { // leave room for the end marker
+            chunk.put(END);
+            chunkStart += chunk.position() - 1; // the next chunk overwrites the end marker
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, Math.max(CHUNK_SIZE, size + 1));
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot extend the journal", e);
+            }
+        }
+        return chunk;
+    }
+
+    private ByteBuffer record(byte type, long time, int size) {
+        return reserve(1 + Long.BYTES + size).put(type).putLong(time);
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        for (int value : values) buffer.putInt(value);
+    }
+
+    @Override
+    public synchronized void onKeyPressed(GameEvent.KeyPressed event) {
+        record(KEY_PRESSED, event.time, 8).putInt(event.player).putInt(event.slot);
+    }
+
+    @Override
+    public synchronized void onCardPlaced(GameEvent.CardPlaced event) {
+        record(CARD_PLACED, event.time, 8).putInt(event.card).putInt(event.slot);
+    }
+
+    @Override
+    public synchronized void onCardRemoved(GameEvent.CardRemoved event) {
+        record(CARD_REMOVED, event.time, 8).putInt(event.card).putInt(event.slot);
+    }
+
+    @Override
+    public synchronized void onTokenPlaced(GameEvent.TokenPlaced event) {
+        record(TOKEN_PLACED, event.time, 8).putInt(event.player).putInt(event.slot);
+    }
+
+    @Override
+    public synchronized void onTokenRemoved(GameEvent.TokenRemoved event) {
+        record(TOKEN_REMOVED, event.time, 8).putInt(event.player).putInt(event.slot);
+    }
+
+    @Override
+    public synchronized void onClaimSubmitted(GameEvent.ClaimSubmitted event) {
+        putInts(record(CLAIM_SUBMITTED, event.time, 8 + 4 * event.slots.length).putInt(event.player), event.slots);
+    }
+
+    @Override
+    public synchronized void onClaimResolved(GameEvent.ClaimResolved event) {
+        ByteBuffer buffer = record(CLAIM_RESOLVED, event.time, 9 + 4 * event.slots.length);
+        putInts(buffer.putInt(event.player).put((byte) (event.legal ? 1 : 0)), event.slots);
+    }
+
+    @Override
+    public synchronized void onReshuffle(GameEvent.Reshuffle event) {
+        record(RESHUFFLE, event.time, 0);
+    }
+
+    @Override
+    public synchronized void onCountdownChanged(GameEvent.CountdownChanged event) {
+        record(COUNTDOWN_CHANGED, event.time, 9).putLong(event.millies).put((byte) (event.warn ? 1 : 0));
+    }
+
+    @Override
+    public synchronized void onElapsedChanged(GameEvent.ElapsedChanged event) {
+        record(ELAPSED_CHANGED, event.time, 8).putLong(event.millies);
+    }
+
+    @Override
+    public synchronized void onScoreChanged(GameEvent.ScoreChanged event) {
+        record(SCORE_CHANGED, event.time, 8).putInt(event.player).putInt(event.score);
+    }
+
+    @Override
+    public synchronized void onFreezeChanged(GameEvent.FreezeChanged event) {
+        record(FREEZE_CHANGED, event.time, 12).putInt(event.player).putLong(event.millies);
+    }
+
+    @Override
+    public synchronized void onWinnersAnnounced(GameEvent.WinnersAnnounced event) {
+        putInts(record(WINNERS_ANNOUNCED, event.time, 4 + 4 * event.players.length), event.players);
+    }
+
+    /**
+     * Cuts the file after the last event and closes it. Call it after the event bus was closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        long length = chunkStart + chunk.position();
+        chunk.force();
+        chunk = null;
+        channel.truncate(length);
+        channel.close();
+    }
+
+    /**
+     * Reads the events of a journal file, in the order they were written.
+     */
+    public static class Reader implements Closeable {
+
+        private final RandomAccessFile file;
+        private final MappedByteBuffer buffer;
+
+        public final int featureSize;
+        public final int featureCount;
+        public final int rows;
+        public final int columns;
+        public final int humanPlayers;
+        public final int computerPlayers;
+
+        /**
+         * The random seed of the recorded game.
+         */
+        public final long randomSeed;
+
+        /**
+         * The wall clock time the journal was created at (System.currentTimeMillis()).
+         */
+        public final long startMillis;
+
+        /**
+         * The time the journal was created at (System.nanoTime()), the event times are relative to it.
+         */
+        public final long startNanos;
+
+        public Reader(Path journal) throws IOException {
+            file = new RandomAccessFile(journal.toFile(), "r");
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.remaining() < 56 || buffer.getInt() != MAGIC)
+                throw new IOException(journal + " is not a game journal");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException("unsupported journal version " + version);
+            featureSize = buffer.getInt();
+            featureCount = buffer.getInt();
+            rows = buffer.getInt();
+            columns = buffer.getInt();
+            humanPlayers = buffer.getInt();
+            computerPlayers = buffer.getInt();
+            randomSeed = buffer.getLong();
+            startMillis = buffer.getLong();
+            startNanos = buffer.getLong();
+        }
+
+        /**
+         * @return - the next event of the journal (with the time it originally had), or null at the end of it.
+         */
+        public GameEvent next() throws IOException {
+            if (!buffer.hasRemaining()) return null;
+            byte type = buffer.get();
+            if (type == END) return null;
+            long time = buffer.getLong();
+            switch (type) {
+                case KEY_PRESSED:
+                    return new GameEvent.KeyPressed(time, buffer.getInt(), buffer.getInt());
+                case CARD_PLACED:
+                    return new GameEvent.CardPlaced(time, buffer.getInt(), buffer.getInt());
+                case CARD_REMOVED:
+                    return new GameEvent.CardRemoved(time, buffer.getInt(), buffer.getInt());
+                case TOKEN_PLACED:
+                    return new GameEvent.TokenPlaced(time, buffer.getInt(), buffer.getInt());
+                case TOKEN_REMOVED:
+                    return new GameEvent.TokenRemoved(time, buffer.getInt(), buffer.getInt());
+                case CLAIM_SUBMITTED:
+                    return new GameEvent.ClaimSubmitted(time, buffer.getInt(), getInts());
+                case CLAIM_RESOLVED:
+                    int player = buffer.getInt();
+                    boolean legal = buffer.get() != 0;
+                    return new GameEvent.ClaimResolved(time, player, getInts(), legal);
+                case RESHUFFLE:
+                    return new GameEvent.Reshuffle(time);
+                case COUNTDOWN_CHANGED:
+                    return new GameEvent.CountdownChanged(time, buffer.getLong(), buffer.get() != 0);
+                case ELAPSED_CHANGED:
+                    return new GameEvent.ElapsedChanged(time, buffer.getLong());
+                case SCORE_CHANGED:
+                    return new GameEvent.ScoreChanged(time, buffer.getInt(), buffer.getInt());
+                case FREEZE_CHANGED:
+                    return new GameEvent.FreezeChanged(time, buffer.getInt(), buffer.getLong());
+                case WINNERS_ANNOUNCED:
+                    return new GameEvent.WinnersAnnounced(time, getInts());
+                default:
+                    throw new IOException("corrupt journal: unknown event type " + type + " at " + (buffer.position() - 9));
+            }
+        }
+
+        private int[] getInts() {
+            int[] values = new int[buffer.getInt()];
+            for (int i = 0; i < values.length; i++) values[i] = buffer.getInt();
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package bguspl.set;
+
+/**
+ * The JMX view of a Histogram.
+ */
+public interface HistogramMXBean {
+
+    long getCount();
+
+    double getMean();
+
+    long getMax();
+
+    long getP50();
+
+    long getP90();
+
+    long getP99();
+
+    long getP999();
+}
@@ -0,0 +1,553 @@
+package bguspl.set;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The results of all the players of all the games, kept on disk. Subscribed to the GameEventBus, it follows a game
+ * (score, sets, penalties and reaction times of every player) and appends the results of the players when the winners
+ * are announced.
+ *
+ * The results are fixed size records in an append only log (results.log). The log is indexed by sorted runs
+ * (index-*.idx): every run indexes a range of records, once sorted by score (for the top results) and once by player
+ * name hash (for the history of a player). The last results appended (less than INDEX_BATCH of them) are not indexed
+ * yet and are scanned by the queries. When there are enough of them they become a new run, and runs of similar sizes
+ * are merged, so there are only a few runs (about log2 of the number of results) and every result is rewritten only a
+ * few times. The log and the runs are forced to the disk before they are used, so a crash loses at most the results
+ * being appended.
+ *
+ * The best TOP_KEPT results (merged from all the runs and the records not indexed yet) are also kept in memory, so
+ * the usual top queries only read the records they return. The history of a player is found in the runs sorted by
+ * name hash, and its records are read in place.
+ */
+public class Leaderboard implements GameEventListener, Closeable {
+
+    private static final int RECORD_SIZE = 64;
+    private static final int NAME_SIZE = 32; // bytes of UTF-8, longer names are cut
+    private static final int SEGMENT_RECORDS = 1 << 24; // the log is mapped in segments of 1GB
+    private static final int INDEX_BATCH = 4096;
+    private static final int TOP_KEPT = 1000;
+
+    /**
+     * The results of a player in one game.
+     */
+    public static final class Result {
+        public final long time; // when the game ended (System.currentTimeMillis())
+        public final String name;
+        public final int score;
+        public final int sets;
+        public final int penalties;
+        public final long averageReactionNanos; // from the last card dealt until the player claimed a legal set
+        public final boolean winner;
+
+        public Result(long time, String name, int score, int sets, int penalties, long averageReactionNanos, boolean winner) {
+            this.time = time;
+            this.name = name;
+            this.score = score;
+            this.sets = sets;
+            this.penalties = penalties;
+            this.averageReactionNanos = averageReactionNanos;
+            this.winner = winner;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%tF %<tT %-20s score %3d sets %3d penalties %4d reaction %8.1f ms%s", time, name,
+                    score, sets, penalties, averageReactionNanos / 1e6, winner ? " (winner)" : "");
+        }
+    }
+
+    private final Logger logger;
+    private final Path directory;
+    private final FileChannel log;
+    private long records; // the number of records in the log
+    private final List<MappedByteBuffer> segments = new ArrayList<>(); // the mapped log, remapped when it is read after it grew
+    private long mappedRecords;
+
+    private final List<Run> runs = new ArrayList<>(); // ordered by their first record, covering the indexed records
+    private long indexed;
+    private final List<long[]> best = new ArrayList<>(); // the best TOP_KEPT entries of all the records, in order
+
+    // the game being played
+    private final String[] names;
+    private final int[] score;
+    private final int[] sets;
+    private final int[] penalties;
+    private final long[] reactionNanos;
+    private final long[] claimTime;
+    private long dealTime;
+
+    /**
+     * Opens the leaderboard in a directory (creating it if needed).
+     *
+     * @param logger    - the logger (for the results that cannot be saved).
+     * @param directory - the directory of the leaderboard files.
+     * @param config    - the game configuration, for the player names (may be null if only queries are made).
+     */
+    public Leaderboard(Logger logger, Path directory, Config config) throws IOException {
+        this.logger = logger;
+        this.directory = directory;
+        Files.createDirectories(directory);
+        log = FileChannel.open(directory.resolve("results.log"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        records = log.size() / RECORD_SIZE;
+        log.truncate(records * RECORD_SIZE); // a record cut in the middle by a crash
+        openRuns();
+        indexTail();
+        for (Run run : runs)
+            for (int i = 0; i < Math.min(TOP_KEPT, run.count); i++)
+                best.add(new long[]{run.scoreEntryKey(i), run.scoreEntryRecord(i)});
+        for (long record = indexed; record < records; record++)
+            best.add(new long[]{-scoreOf(record), record});
+        best.sort(Run::compare);
+        if (best.size() > TOP_KEPT) best.subList(TOP_KEPT, best.size()).clear();
+
+        int players = config == null ? 0 : config.players;
+        names = config == null ? new String[0] : config.playerNames;
+        score = new int[players];
+        sets = new int[players];
+        penalties = new int[players];
+        reactionNanos = new long[players];
+        claimTime = new long[players];
+    }
+
+    @Override
+    public synchronized void onCardPlaced(GameEvent.CardPlaced event) {
+        dealTime = event.time;
+    }
+
+    @Override
+    public synchronized void onClaimSubmitted(GameEvent.ClaimSubmitted event) {
+        claimTime[event.player] = event.time;
+    }
+
+    @Override
+    public synchronized void onClaimResolved(GameEvent.ClaimResolved event) {
+        if (event.legal) {
+            sets[event.player]++;
+            reactionNanos[event.player] += Math.max(0, claimTime[event.player] - dealTime);
+        } else {
+            penalties[event.player]++;
+        }
+    }
+
+    @Override
+    public synchronized void onScoreChanged(GameEvent.ScoreChanged event) {
+        score[event.player] = event.score;
+    }
+
+    @Override
+    public synchronized void onWinnersAnnounced(GameEvent.WinnersAnnounced event) {
+        long time = System.currentTimeMillis();
+        Result[] results = new Result[score.length];
+        for (int player = 0; player < results.length; player++) {
+            final int id = player;
+            boolean winner = Arrays.stream(event.players).anyMatch(winnerId -> winnerId == id);
+            results[player] = new Result(time, names[player], score[player], sets[player], penalties[player],
+                    sets[player] == 0 ? 0 : reactionNanos[player] / sets[player], winner);
+        }
+        try {
+            append(results);
+        } catch (IOException e) { // the game goes on without these results
+            logger.log(Level.SEVERE, "cannot save the game results, they are dropped", e);
+        }
+        Arrays.fill(score, 0);
+        Arrays.fill(sets, 0);
+        Arrays.fill(penalties, 0);
+        Arrays.fill(reactionNanos, 0);
+    }
+
+    /**
+     * Appends results to the log (and indexes them if enough results are not indexed yet).
+     */
+    public synchronized void append(Result... results) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(results.length * RECORD_SIZE);
+        for (Result result : results) {
+            byte[] name = truncate(result.name);
+            buffer.putLong(result.time).put(name).put(new byte[NAME_SIZE - name.length]);
+            buffer.putInt(result.score).putInt(result.sets).putInt(result.penalties).putLong(result.averageReactionNanos);
+            buffer.put((byte) (result.winner ? 1 : 0)).put(new byte[RECORD_SIZE - 61]);
+        }
+        buffer.flip();
+        long position = records * RECORD_SIZE;
+        while (buffer.hasRemaining()) position += log.write(buffer, position);
+        log.force(false);
+        for (int i = 0; i < results.length; i++) {
+            long[] entry = {-results[i].score, records + i};
+            int index = Collections.binarySearch(best, entry, Run::compare);
+            if (index < 0 && -index - 1 < TOP_KEPT) best.add(-index - 1, entry);
+        }
+        if (best.size() > TOP_KEPT) best.subList(TOP_KEPT, best.size()).clear();
+        records += results.length;
+        indexTail();
+    }
+
+    /**
+     * @return - the best results of all times (the earlier result first among equal scores).
+     */
+    public synchronized List<Result> top(int count) throws IOException {
+        if (count <= TOP_KEPT) {
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < Math.min(count, best.size()); i++)
+                results.add(read(best.get(i)[1]));
+            return results;
+        }
+        List<long[]> candidates = new ArrayList<>(); // the best entries of every run and the records not indexed yet
+        for (Run run : runs)
+            for (int i = 0; i < Math.min(count, run.count); i++)
+                candidates.add(new long[]{run.scoreEntryKey(i), run.scoreEntryRecord(i)});
+        for (long record = indexed; record < records; record++)
+            candidates.add(new long[]{-scoreOf(record), record});
+        candidates.sort(Run::compare);
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, candidates.size()); i++)
+            results.add(read(candidates.get(i)[1]));
+        return results;
+    }
+
+    /**
+     * @return - all the results of a player, oldest first.
+     */
+    public synchronized List<Result> history(String name) throws IOException {
+        byte[] key = truncate(name);
+        String stored = new String(key, StandardCharsets.UTF_8); // the name as it is in every record of the player
+        long hash = hash(key);
+        List<Result> results = new ArrayList<>();
+        for (Run run : runs) {
+            for (int i = run.firstPlayerEntry(hash); i < run.count && run.playerEntryHash(i) == hash; i++) {
+                long record = run.playerEntryRecord(i);
+                if (nameEquals(record, key)) results.add(read(record, stored));
+            }
+        }
+        for (long record = indexed; record < records; record++)
+            if (nameEquals(record, key)) results.add(read(record, stored));
+        return results;
+    }
+
+    /**
+     * @return - the number of results in the leaderboard.
+     */
+    public synchronized long size() {
+        return records;
+    }
+
+    /**
+     * @return - the mapped segment of the log that holds a record (see offset).
+     */
+    private ByteBuffer segment(long record) throws IOException {
+        if (mappedRecords < records) {
+            if (!segments.isEmpty()) segments.remove(segments.size() - 1); // the last segment may have grown
+            for (long first = (long) segments.size() * SEGMENT_RECORDS; first < records; first += SEGMENT_RECORDS) {
+                long size = Math.min(SEGMENT_RECORDS, records - first) * RECORD_SIZE;
+                segments.add(log.map(FileChannel.MapMode.READ_ONLY, first * RECORD_SIZE, size));
+            }
+            mappedRecords = records;
+        }
+        return segments.get((int) (record / SEGMENT_RECORDS));
+    }
+
+    /**
+     * @return - the position of a record in its segment.
+     */
+    private static int offset(long record) {
+        return (int) (record % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    private int scoreOf(long record) throws IOException {
+        return segment(record).getInt(offset(record) + 8 + NAME_SIZE);
+    }
+
+    private byte[] nameOf(long record) throws IOException {
+        ByteBuffer segment = segment(record);
+        int offset = offset(record) + 8;
+        int length = 0;
+        while (length < NAME_SIZE && segment.get(offset + length) != 0) length++;
+        byte[] name = new byte[length];
+        for (int i = 0; i < length; i++) name[i] = segment.get(offset + i);
+        return name;
+    }
+
+    /**
+     * Compares the name of a record in place.
+     */
+    private boolean nameEquals(long record, byte[] name) throws IOException {
+        ByteBuffer segment = segment(record);
+        int offset = offset(record) + 8;
+        for (int i = 0; i < name.length; i++)
+            if (segment.get(offset + i) != name[i]) return false;
+        return name.length == NAME_SIZE || segment.get(offset + name.length) == 0;
+    }
+
+    private Result read(long record) throws IOException {
+        return read(record, new String(nameOf(record), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a record (with absolute gets, nothing but the result is allocated) whose name is already known.
+     */
+    private Result read(long record, String name) throws IOException {
+        ByteBuffer segment = segment(record);
+        int offset = offset(record);
+        int fields = offset + 8 + NAME_SIZE;
+        return new Result(segment.getLong(offset), name, segment.getInt(fields), segment.getInt(fields + 4),
+                segment.getInt(fields + 8), segment.getLong(fields + 12), segment.get(fields + 20) != 0);
+    }
+
+    private static byte[] truncate(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, NAME_SIZE);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) length--; // do not cut a character
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static long hash(byte[] name) { // 64 bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Loads the runs that cover the log from its start. Runs left over by an interrupted merge (covered by the
+     * merged run) or not matching the log are deleted.
+     */
+    private void openRuns() throws IOException {
+        List<Run> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "index-*.idx")) {
+            for (Path file : files) {
+                Run run = Run.open(file);
+                if (run == null) Files.delete(file);
+                else found.add(run);
+            }
+        }
+        found.sort(Comparator.comparingLong((Run run) -> run.first).thenComparingLong(run -> -run.count));
+        for (Run run : found) {
+            if (run.first == indexed && run.first + run.count <= records) {
+                runs.add(run);
+                indexed += run.count;
+            } else {
+                Files.delete(run.file);
+            }
+        }
+    }
+
+    /**
+     * Indexes the records that are not indexed yet, if there are enough of them.
+     */
+    private void indexTail() throws IOException {
+        while (records - indexed >= INDEX_BATCH) {
+            int count = (int) Math.min(records - indexed, Integer.MAX_VALUE / Run.ENTRY_SIZE / 2);
+            long[][] byScore = new long[count][];
+            long[][] byPlayer = new long[count][];
+            for (int i = 0; i < count; i++) {
+                long record = indexed + i;
+                byScore[i] = new long[]{-scoreOf(record), record}; // the best score first
+                byPlayer[i] = new long[]{hash(nameOf(record)), record};
+            }
+            Arrays.sort(byScore, Run::compare);
+            Arrays.sort(byPlayer, Run::compare);
+            runs.add(Run.write(directory, indexed, count, byScore, byPlayer));
+            indexed += count;
+
+            // merge the last runs while the one before the last is not much larger, like a binary counter
+            while (runs.size() >= 2 && runs.get(runs.size() - 2).count <= 2L * runs.get(runs.size() - 1).count) {
+                Run last = runs.remove(runs.size() - 1);
+                Run previous = runs.remove(runs.size() - 1);
+                runs.add(Run.merge(directory, previous, last));
+                Files.delete(previous.file);
+                Files.delete(last.file);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * A sorted run of the index, mapped to memory: a header (magic, version, first record, number of records), the
+     * entries sorted by score and the entries sorted by player. Every entry is a key (the negated score or the name
+     * hash) and a record, the entries are sorted by the key and then by the record.
+     */
+    private static final class Run {
+        private static final int MAGIC = 0x5345544C; // "SETL"
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 24;
+        private static final int ENTRY_SIZE = 16;
+
+        final Path file;
+        final long first;
+        final int count;
+        private final MappedByteBuffer data;
+
+        private Run(Path file, long first, int count, MappedByteBuffer data) {
+            this.file = file;
+            this.first = first;
+            this.count = count;
+            this.data = data;
+        }
+
+        long scoreEntryKey(int entry) {
+            return data.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+        }
+
+        long scoreEntryRecord(int entry) {
+            return data.getLong(HEADER_SIZE + entry * ENTRY_SIZE + 8);
+        }
+
+        long playerEntryHash(int entry) {
+            return data.getLong(HEADER_SIZE + (count + entry) * ENTRY_SIZE);
+        }
+
+        long playerEntryRecord(int entry) {
+            return data.getLong(HEADER_SIZE + (count + entry) * ENTRY_SIZE + 8);
+        }
+
+        /**
+         * @return - the first entry by player with the hash (or after where it would be).
+         */
+        int firstPlayerEntry(long hash) {
+            int low = 0, high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (playerEntryHash(middle) < hash) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        /**
+         * @return - the run, or null if the file is not a complete run.
+         */
+        static Run open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_SIZE) return null;
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) return null;
+                long first = data.getLong(8);
+                int count = (int) data.getLong(16);
+                if (data.capacity() != HEADER_SIZE + 2L * count * ENTRY_SIZE) return null;
+                return new Run(file, first, count, data);
+            }
+        }
+
+        /**
+         * Writes a run (to a temporary file first, forced to the disk, so a crash never leaves a partial run).
+         */
+        private static Run write(Path directory, long first, int count, EntryWriter entries) throws IOException {
+            Path file = directory.resolve("index-" + first + "-" + count + ".idx");
+            Path temp = directory.resolve("index-" + first + "-" + count + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(first);
+                out.writeLong(count);
+                entries.write(out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return open(file);
+        }
+
+        static Run write(Path directory, long first, int count, long[][] byScore, long[][] byPlayer) throws IOException {
+            return write(directory, first, count, out -> {
+                for (long[] entry : byScore) {
+                    out.writeLong(entry[0]);
+                    out.writeLong(entry[1]);
+                }
+                for (long[] entry : byPlayer) {
+                    out.writeLong(entry[0]);
+                    out.writeLong(entry[1]);
+                }
+            });
+        }
+
+        /**
+         * @return - a run of the records of two adjacent runs.
+         */
+        static Run merge(Path directory, Run a, Run b) throws IOException {
+            return write(directory, a.first, a.count + b.count, out -> {
+                merge(out, a, b, 0);
+                merge(out, a, b, 1);
+            });
+        }
+
+        private static void merge(DataOutputStream out, Run a, Run b, int section) throws IOException {
+            int i = 0, j = 0;
+            while (i < a.count || j < b.count) {
+                boolean fromA = j == b.count || (i < a.count && compare(a.key(section, i), a.record(section, i),
+                        b.key(section, j), b.record(section, j)) <= 0);
+                Run run = fromA ? a : b;
+                int entry = fromA ? i++ : j++;
+                out.writeLong(run.key(section, entry));
+                out.writeLong(run.record(section, entry));
+            }
+        }
+
+        private long key(int section, int entry) {
+            return section == 0 ? scoreEntryKey(entry) : playerEntryHash(entry);
+        }
+
+        private long record(int section, int entry) {
+            return section == 0 ? scoreEntryRecord(entry) : playerEntryRecord(entry);
+        }
+
+        static int compare(long[] a, long[] b) {
+            return compare(a[0], a[1], b[0], b[1]);
+        }
+
+        private static int compare(long keyA, long recordA, long keyB, long recordB) {
+            return keyA != keyB ? Long.compare(keyA, keyB) : Long.compare(recordA, recordB);
+        }
+
+        private interface EntryWriter {
+            void write(DataOutputStream out) throws IOException;
+        }
+    }
+
+    /**
+     * Prints the leaderboard. Usage: Leaderboard <directory> [top <count> | player <name>]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: Leaderboard <directory> [top <count> | player <name>]");
+            return;
+        }
+        Logger logger = Logger.getLogger("Leaderboard");
+        try (Leaderboard leaderboard = new Leaderboard(logger, Paths.get(args[0]), null)) {
+            long start = System.nanoTime();
+            List<Result> results = args.length > 2 && args[1].equals("player")
+                    ? leaderboard.history(args[2])
+                    : leaderboard.top(args.length > 2 ? Integer.parseInt(args[2]) : 10);
+            long elapsed = System.nanoTime() - start;
+            results.forEach(System.out::println);
+            System.out.printf("%d of %d results in %.3f ms%n", results.size(), leaderboard.size(), elapsed / 1e6);
+        }
+    }
+}
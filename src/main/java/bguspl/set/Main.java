@@ -1,15 +1,26 @@
 package bguspl.set;
 
+import bguspl.set.ex.Checkpoint;
 import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
+import bguspl.set.ex.Warmup;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.Properties;
 import java.util.logging.*;
 
 /**
@@ -22,6 +33,7 @@ public class Main {
 
     private static boolean xButtonPressed = false;
     private static Logger logger;
+    private static String runName; // the start time of this run, the log files are named after it
 
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
@@ -33,17 +45,50 @@ public class Main {
     /**
      * The game's main function. Creates all data structures and initializes the threads.
      *
-     * @param args - unused.
+     * @param args - optional: --replay <journal> [--fast] to replay the key presses recorded in a game journal
+     *             (with the original timing, or as fast as possible), --resume <checkpoint> to continue a saved game,
+     *             or --rooms <count> to play many games at once (without a user interface).
      */
     public static void main(String[] args) {
 
         mainThread = Thread.currentThread();
 
+        Path replayJournal = null;
+        boolean replayFast = false;
+        Path resumeCheckpoint = null;
+        int rooms = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--replay") && i + 1 < args.length) replayJournal = Paths.get(args[++i]);
+            else if (args[i].equals("--fast")) replayFast = true;
+            else if (args[i].equals("--resume") && i + 1 < args.length) resumeCheckpoint = Paths.get(args[++i]);
+            else if (args[i].equals("--rooms") && i + 1 < args.length) rooms = parseRooms(args[++i]);
+            else System.out.println("ignoring unknown argument " + args[i]);
+        }
+
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
-        Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        Properties properties = Config.loadProperties("config.properties", logger);
+        if (replayJournal != null && !replaySettings(replayJournal, properties)) return;
+        if (rooms > 0) {
+            hostRooms(properties, rooms);
+            return;
+        }
+        Checkpoint checkpoint = null;
+        if (resumeCheckpoint != null) {
+            try {
+                checkpoint = Checkpoint.read(resumeCheckpoint);
+            } catch (IOException e) {
+                logger.severe("cannot resume " + resumeCheckpoint + ": " + e.getMessage());
+                System.out.println("cannot resume " + resumeCheckpoint + ": " + e.getMessage());
+                return;
+            }
+            resumeSettings(checkpoint, properties);
+            logger.severe("resuming " + resumeCheckpoint);
+        }
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config, openCompletionTable(config));
+        if (config.warmupMillis > 0) Warmup.run(logger, config, util, config.warmupMillis);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -58,16 +103,31 @@ public class Main {
         ui = new UserInterfaceDecorator(logger, util, ui);
 
         Env env = new Env(logger, config, ui, util);
+        GameJournal journal = openJournal(config);
+        if (journal != null) env.events.subscribe(journal);
+        Leaderboard leaderboard = openLeaderboard(config);
+        if (leaderboard != null) env.events.subscribe(leaderboard);
+        RemoteServer server = openServer(env, players);
+        env.events.start();
+        env.metrics.register(logger);
 
         // create the game entities
         Table table = new Table(env);
         dealer = new Dealer(env, table, players);
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        if (checkpoint != null) dealer.resume(checkpoint);
+        if (server != null) server.start();
 
         // start the dealer thread
+        ThreadLogger replayThread = null;
+        if (replayJournal != null) {
+            replayThread = new ThreadLogger(new Replay(logger, replayJournal, players, replayFast, dealer::terminate), "replay", logger);
+            replayThread.setDaemon(true);
+        }
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
         dealerThread.startWithLog();
+        if (replayThread != null) replayThread.startWithLog();
 
         try {
             // shutdown stuff
@@ -75,14 +135,196 @@ public class Main {
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
+            if (replayThread != null) replayThread.interrupt();
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            env.events.close();
+            if (journal != null) {
+                env.events.unsubscribe(journal);
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    logger.severe("cannot close journal file: " + e.getMessage());
+                }
+            }
+            if (leaderboard != null) {
+                env.events.unsubscribe(leaderboard);
+                try {
+                    leaderboard.close();
+                } catch (IOException e) {
+                    logger.severe("cannot close leaderboard: " + e.getMessage());
+                }
+            }
+            if (server != null) {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    logger.severe("cannot close server: " + e.getMessage());
+                }
+            }
+            try {
+                env.metrics.dump(Paths.get("./logs/" + runName + "-metrics.txt"));
+            } catch (IOException e) {
+                logger.severe("cannot write metrics file: " + e.getMessage());
+            }
+            env.metrics.unregister();
             if (!xButtonPressed) env.ui.dispose();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
+    /**
+     * @return - the number of rooms of --rooms, or 0 (a single game without rooms) if it is not a number.
+     */
+    private static int parseRooms(String rooms) {
+        try {
+            return Integer.parseInt(rooms);
+        } catch (NumberFormatException e) {
+            System.out.println("ignoring invalid number of rooms " + rooms);
+            return 0;
+        }
+    }
+
+    /**
+     * Plays many games at once, each in its own room with the same settings (but a different random seed), until they
+     * are all over. The metrics of every room are written to their own file.
+     */
+    private static void hostRooms(Properties properties, int count) {
+        Config config = new Config(logger, properties);
+        try (Rooms rooms = new Rooms(logger, config.roomThreads)) {
+            List<Room> opened = new ArrayList<>();
+            for (int i = 1; i <= count; i++) {
+                Properties roomProperties = new Properties();
+                roomProperties.putAll(properties);
+                roomProperties.setProperty("RandomSeed", Long.toString(config.randomSeed + i));
+                opened.add(rooms.open("room-" + i, roomProperties));
+            }
+            logger.severe("hosting " + count + " rooms on " + config.roomThreads + " threads");
+            for (Room room : opened) {
+                room.awaitEnd(Long.MAX_VALUE);
+                try {
+                    room.env.metrics.dump(Paths.get("./logs/" + runName + "-" + room.name + "-metrics.txt"));
+                } catch (IOException e) {
+                    logger.severe("cannot write metrics file: " + e.getMessage());
+                }
+                rooms.close(room);
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            System.out.println("Thanks for playing... it was fun!");
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+
+    /**
+     * Changes the settings to the ones of a recorded game: the same cards, table, players and random seed. All the
+     * players become human players, their key presses come from the journal.
+     *
+     * @return - false if the journal cannot be read.
+     */
+    private static boolean replaySettings(Path journal, Properties properties) {
+        try (GameJournal.Reader reader = new GameJournal.Reader(journal)) {
+            properties.setProperty("FeatureSize", Integer.toString(reader.featureSize));
+            properties.setProperty("FeatureCount", Integer.toString(reader.featureCount));
+            properties.setProperty("Rows", Integer.toString(reader.rows));
+            properties.setProperty("Columns", Integer.toString(reader.columns));
+            properties.setProperty("HumanPlayers", Integer.toString(reader.humanPlayers + reader.computerPlayers));
+            properties.setProperty("ComputerPlayers", "0");
+            properties.setProperty("RandomSeed", Long.toString(reader.randomSeed));
+            logger.severe("replaying " + journal);
+            return true;
+        } catch (IOException e) {
+            logger.severe("cannot replay " + journal + ": " + e.getMessage());
+            System.out.println("cannot replay " + journal + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Changes the settings to the ones of a saved game: the same cards, table and players.
+     */
+    private static void resumeSettings(Checkpoint checkpoint, Properties properties) {
+        properties.setProperty("FeatureSize", Integer.toString(checkpoint.featureSize));
+        properties.setProperty("FeatureCount", Integer.toString(checkpoint.featureCount));
+        properties.setProperty("Rows", Integer.toString(checkpoint.rows));
+        properties.setProperty("Columns", Integer.toString(checkpoint.columns));
+        properties.setProperty("HumanPlayers", Integer.toString(checkpoint.humanPlayers));
+        properties.setProperty("ComputerPlayers", Integer.toString(checkpoint.computerPlayers));
+    }
+
+    /**
+     * Opens the configured table of the completions of the card pairs, creating it on the first run.
+     *
+     * @return - the table, or null if it is disabled or cannot be opened.
+     */
+    private static CompletionTable openCompletionTable(Config config) {
+        if (config.completionTableFile.isEmpty()) return null;
+        try {
+            long start = System.currentTimeMillis();
+            CompletionTable table = CompletionTable.open(Paths.get(config.completionTableFile), config);
+            logger.info("opened completion table " + config.completionTableFile + " in " + (System.currentTimeMillis() - start) + " ms");
+            return table;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.severe("cannot open completion table: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Creates the journal of this run in the configured journal directory.
+     *
+     * @return - the journal, or null if it is disabled or cannot be created.
+     */
+    private static GameJournal openJournal(Config config) {
+        if (config.journalDirectory.isEmpty()) return null;
+        try {
+            Path directory = Paths.get(config.journalDirectory);
+            Files.createDirectories(directory);
+            Path file = directory.resolve(runName + ".journal");
+            logger.info("writing game journal to " + file);
+            return new GameJournal(file, config);
+        } catch (IOException | InvalidPathException e) {
+            logger.severe("cannot create journal file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the leaderboard in the configured directory.
+     *
+     * @return - the leaderboard, or null if it is disabled or cannot be opened.
+     */
+    private static Leaderboard openLeaderboard(Config config) {
+        if (config.leaderboardDirectory.isEmpty()) return null;
+        try {
+            return new Leaderboard(logger, Paths.get(config.leaderboardDirectory), config);
+        } catch (IOException | InvalidPathException e) {
+            logger.severe("cannot open leaderboard: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the server for remote players on the configured port.
+     *
+     * @return - the server, or null if it is disabled or cannot be opened.
+     */
+    private static RemoteServer openServer(Env env, Player[] players) {
+        if (env.config.serverPort == 0) return null;
+        try {
+            SpectatorFeed feed = new SpectatorFeed(env.config, env.metrics);
+            RemoteServer server = new RemoteServer(logger, env.config, players, feed);
+            env.events.subscribe(feed);
+            logger.severe("remote players can connect to " + server.address());
+            return server;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.severe("cannot open server: " + e.getMessage());
+            return null;
+        }
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
@@ -91,7 +333,8 @@ public class Main {
         try {
             //noinspection ResultOfMethodCallIgnored
             new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            runName = format.format(Calendar.getInstance().getTime());
+            handler = new FileHandler("./logs/" + runName + ".log");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -110,9 +353,13 @@ public class Main {
             // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
             @Override
             public synchronized String format(LogRecord lr) {
-                return String.format(format, new Date(lr.getMillis()),
+                String record = String.format(format, new Date(lr.getMillis()),
                         lr.getLevel().getLocalizedName(), lr.getMessage()
                 );
+                if (lr.getThrown() == null) return record;
+                StringWriter stackTrace = new StringWriter();
+                lr.getThrown().printStackTrace(new PrintWriter(stackTrace));
+                return record + stackTrace;
             }
         }));
         logger.setLevel(level);
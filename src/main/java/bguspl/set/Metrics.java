@@ -0,0 +1,136 @@
+package bguspl.set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * The measurements taken inside a running game. Recording is lock-free and cheap enough to stay on all the time.
+ * The metrics can be watched through JMX (under "bguspl.set:type=Metrics") and are dumped to a file when the game ends.
+ */
+public class Metrics {
+
+    private final Map<String, Object> metrics = new LinkedHashMap<>(); // name -> Histogram or Counter
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    /**
+     * Time from a key press until the token is on the table.
+     */
+    public final Histogram keyPressToTokenNanos = histogram("keyPressToTokenNanos");
+
+    /**
+     * Time from a player submitting a set until the dealer answers.
+     */
+    public final Histogram claimToVerdictNanos = histogram("claimToVerdictNanos");
+
+    /**
+     * Time spent waiting for a table slot lock.
+     */
+    public final Histogram slotLockWaitNanos = histogram("slotLockWaitNanos");
+
+    /**
+     * Time from the turn timeout until a new table is dealt.
+     */
+    public final Histogram reshuffleNanos = histogram("reshuffleNanos");
+
+    /**
+     * The number of sets waiting for the dealer (sampled whenever a set is submitted).
+     */
+    public final Histogram setsToCheckDepth = histogram("setsToCheckDepth");
+
+    /**
+     * Time the dealer spends taking a checkpoint of the game (saving it is done in the background).
+     */
+    public final Histogram checkpointNanos = histogram("checkpointNanos");
+
+    public final Counter dealerWakeups = counter("dealerWakeups");
+    public final Counter legalClaims = counter("legalClaims");
+    public final Counter illegalClaims = counter("illegalClaims");
+
+    /**
+     * Snapshots of the table sent to spectators (when they start watching or fall behind the feed).
+     */
+    public final Counter spectatorSnapshots = counter("spectatorSnapshots");
+
+    private Histogram histogram(String name) {
+        Histogram histogram = new Histogram();
+        metrics.put(name, histogram);
+        return histogram;
+    }
+
+    private Counter counter(String name) {
+        Counter counter = new Counter();
+        metrics.put(name, counter);
+        return counter;
+    }
+
+    /**
+     * Registers all the metrics in the platform MBean server.
+     */
+    public void register(Logger logger) {
+        register(logger, null);
+    }
+
+    /**
+     * Registers all the metrics of one room in the platform MBean server (under "bguspl.set:type=Metrics,room=...").
+     *
+     * @param room - the name of the room, or null for the single game.
+     */
+    public synchronized void register(Logger logger, String room) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String scope = room == null ? "" : ",room=" + ObjectName.quote(room);
+        for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+            try {
+                ObjectName name = new ObjectName("bguspl.set:type=Metrics" + scope + ",name=" + metric.getKey());
+                server.registerMBean(metric.getValue(), name);
+                registered.add(name);
+            } catch (JMException e) {
+                logger.severe("cannot register metric " + metric.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Removes all the metrics from the platform MBean server.
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ignored) {}
+        }
+        registered.clear();
+    }
+
+    /**
+     * Writes a summary of all the metrics to a text file.
+     *
+     * @param file - the file to write to (replaced if it exists).
+     */
+    public void dump(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.printf("%-22s %10s %14s %12s %12s %12s %12s %12s%n", "metric", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+            for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+                if (metric.getValue() instanceof Histogram) {
+                    Histogram h = (Histogram) metric.getValue();
+                    out.printf("%-22s %10d %14.1f %12d %12d %12d %12d %12d%n", metric.getKey(), h.getCount(), h.getMean(),
+                            h.getP50(), h.getP90(), h.getP99(), h.getP999(), h.getMax());
+                } else {
+                    out.printf("%-22s %10d%n", metric.getKey(), ((Counter) metric.getValue()).getCount());
+                }
+            }
+        }
+    }
+}
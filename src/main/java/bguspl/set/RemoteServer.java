@@ -0,0 +1,265 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Lets remote clients play over TCP. Every client that connects gets a free human player (or only watches the game if
+ * there is none), its key presses are passed to the player and it receives the frames of the SpectatorFeed.
+ *
+ * All the connections are handled by a single "server" thread with a selector. Every client has its own cursor in the
+ * feed and an output buffer of OUTPUT_SIZE bytes, the server thread copies frames to it as long as there is room and
+ * writes as much as the client takes. A client that falls behind the feed gets a snapshot of the table instead of the
+ * frames it missed, so a slow client never holds the game or the other clients back.
+ *
+ * The protocol is binary, all the numbers are big endian. The client sends one unsigned short per key press: the slot.
+ * The server sends a HELLO message (type byte, then player (-1 when watching), rows, columns and players as shorts),
+ * followed by the frames of the feed, starting with a snapshot.
+ */
+public class RemoteServer implements Runnable, Closeable {
+
+    public static final byte HELLO = 1;
+
+    private static final int OUTPUT_SIZE = 1 << 16;
+
+    private final Logger logger;
+    private final Config config;
+    private final Player[] players;
+    private final SpectatorFeed feed;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ThreadLogger thread;
+    private volatile boolean running;
+
+    // the clients (used by the server thread only)
+    private final List<Client> clients = new ArrayList<>();
+    private final Client[] playerClients; // the client of every player, null if none
+    private final ByteBuffer input = ByteBuffer.allocateDirect(1 << 16);
+
+    private static final class Client {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final int player;
+        final SpectatorFeed.Cursor cursor;
+        ByteBuffer output = ByteBuffer.allocate(OUTPUT_SIZE);
+        ByteBuffer frame; // the next frame, when there was no room for it in the output buffer
+        int highByte = -1; // the first byte of a key press that was split between two reads, -1 if none
+
+        Client(SocketChannel channel, SelectionKey key, int player, SpectatorFeed.Cursor cursor) {
+            this.channel = channel;
+            this.key = key;
+            this.player = player;
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Opens the server socket. The clients are accepted once the server is started.
+     *
+     * @param logger  - the logger.
+     * @param config  - the game configuration, with the server address and port.
+     * @param players - the players, the human ones are played by the clients.
+     * @param feed    - the feed of the table changes sent to the clients.
+     */
+    public RemoteServer(Logger logger, Config config, Player[] players, SpectatorFeed feed) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        this.feed = feed;
+        playerClients = new Client[config.humanPlayers];
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(config.serverAddress, config.serverPort), 128);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new ThreadLogger(this, "server", logger);
+        thread.setDaemon(true);
+        feed.onPublish(selector::wakeup);
+    }
+
+    /**
+     * @return - the address the server listens on.
+     */
+    public InetSocketAddress address() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Starts accepting clients (call it once the players were created).
+     */
+    public void start() {
+        running = true;
+        thread.startWithLog();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Client client = (Client) key.attachment();
+                        if (key.isReadable()) read(client);
+                        if (key.isValid() && key.isWritable()) write(client);
+                    }
+                }
+                broadcast();
+            }
+        } catch (IOException e) {
+            logger.severe("remote server failed: " + e);
+        } finally {
+            broadcast(); // the last frames (e.g. the winners), as far as the clients take them without waiting
+            for (Client client : new ArrayList<>(clients)) disconnect(client);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            int player = -1;
+            for (int id = 0; id < playerClients.length && player < 0; id++)
+                if (playerClients[id] == null) player = id;
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Client client = new Client(channel, key, player, feed.subscribe());
+            client.output.put(HELLO).putShort((short) player).putShort((short) config.rows)
+                    .putShort((short) config.columns).putShort((short) config.players);
+            key.attach(client);
+            clients.add(client);
+            if (player >= 0) playerClients[player] = client;
+            logger.info("client " + channel.getRemoteAddress() + " connected as " + (player < 0 ? "a spectator" : "player " + (player + 1)));
+        }
+    }
+
+    /**
+     * Passes the key presses of a client to its player. Presses are dropped while the player has a full table of
+     * presses waiting, so a client cannot flood the game.
+     */
+    private void read(Client client) {
+        input.clear();
+        int read;
+        try {
+            read = client.channel.read(input);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect(client);
+            return;
+        }
+        if (client.player < 0) return;
+        Player player = players[client.player];
+        input.flip();
+        if (client.highByte >= 0 && input.hasRemaining()) {
+            pressKey(player, client.highByte << 8 | input.get() & 0xff);
+            client.highByte = -1;
+        }
+        while (input.remaining() >= Short.BYTES)
+            pressKey(player, input.getShort() & 0xffff);
+        if (input.hasRemaining()) client.highByte = input.get() & 0xff;
+    }
+
+    private void pressKey(Player player, int slot) {
+        if (slot < config.tableSize && player.pendingKeyPresses() < config.tableSize) player.keyPressed(slot);
+    }
+
+    /**
+     * Copies the new frames to the clients that are not waiting for their previous output to be written, and writes.
+     */
+    private void broadcast() {
+        for (Client client : new ArrayList<>(clients))
+            if ((client.key.interestOps() & SelectionKey.OP_WRITE) == 0) write(client);
+    }
+
+    /**
+     * Copies frames to the output buffer of a client, as long as there is room.
+     */
+    private void fill(Client client) {
+        while (true) {
+            if (client.frame == null) client.frame = client.cursor.next();
+            if (client.frame == null) return;
+            if (client.output.remaining() < client.frame.remaining()) {
+                if (client.output.position() > 0) return;
+                client.output = ByteBuffer.allocate(client.frame.remaining()); // a huge snapshot
+            }
+            client.output.put(client.frame);
+            client.frame = null;
+        }
+    }
+
+    /**
+     * Writes the output of a client (and the frames after it) until there is nothing new or the client does not take
+     * more, then waits for the client to be writable again.
+     */
+    private void write(Client client) {
+        try {
+            while (true) {
+                fill(client);
+                if (client.output.position() == 0) break;
+                client.output.flip();
+                client.channel.write(client.output);
+                client.output.compact();
+                if (client.output.position() > 0) break;
+            }
+        } catch (IOException e) {
+            disconnect(client);
+            return;
+        }
+        if (client.output.position() > 0) {
+            client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            client.key.interestOps(SelectionKey.OP_READ);
+            if (client.output.capacity() > OUTPUT_SIZE) client.output = ByteBuffer.allocate(OUTPUT_SIZE);
+        }
+    }
+
+    private void disconnect(Client client) {
+        if (!clients.remove(client)) return;
+        if (client.player >= 0) playerClients[client.player] = null;
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {
+        }
+        logger.info("client of " + (client.player < 0 ? "a spectator" : "player " + (client.player + 1)) + " disconnected");
+    }
+
+    /**
+     * Disconnects all the clients and closes the server socket.
+     */
+    @Override
+    public void close() throws IOException {
+        if (running) {
+            running = false;
+            selector.wakeup();
+            try {
+                thread.joinWithLog();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        server.close();
+        selector.close();
+    }
+}
@@ -0,0 +1,75 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Plays the key presses recorded in a game journal back to the players, as if they were pressed on the keyboard.
+ * Together with the random seed of the journal, the same deals and the same input are repeated. The keys are pressed
+ * either with their original timing (relative to the start of the journal) or as fast as possible. When the recording
+ * ends (or, when replaying as fast as possible, when the players handled all the keys), the game is ended.
+ */
+public class Replay implements Runnable {
+
+    private final Logger logger;
+    private final Path journal;
+    private final Player[] players;
+    private final boolean fast;
+    private final Runnable endGame;
+
+    /**
+     * @param logger  - the logger.
+     * @param journal - the journal file to replay.
+     * @param players - the players to press the keys of, all human (i.e. with no computer player threads).
+     * @param fast    - true to press the keys without waiting, false to keep the original timing.
+     * @param endGame - called when the replay is over.
+     */
+    public Replay(Logger logger, Path journal, Player[] players, boolean fast, Runnable endGame) {
+        this.logger = logger;
+        this.journal = journal;
+        this.players = players;
+        this.fast = fast;
+        this.endGame = endGame;
+    }
+
+    @Override
+    public void run() {
+        int keys = 0;
+        try (GameJournal.Reader reader = new GameJournal.Reader(journal)) {
+            long start = System.nanoTime();
+            GameEvent event;
+            long end = reader.startNanos;
+            while ((event = reader.next()) != null) {
+                end = event.time;
+                if (!(event instanceof GameEvent.KeyPressed)) continue;
+                GameEvent.KeyPressed key = (GameEvent.KeyPressed) event;
+                if (!fast) {
+                    long wait = (key.time - reader.startNanos) - (System.nanoTime() - start);
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                } else if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (key.player < players.length) players[key.player].keyPressed(key.slot);
+                keys++;
+            }
+            logger.info("replay of " + journal + " finished after " + keys + " key presses.");
+
+            if (!fast) {
+                long wait = (end - reader.startNanos) - (System.nanoTime() - start);
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            } else {
+                for (Player player : players)
+                    while (player.pendingKeyPresses() > 0) Thread.sleep(10);
+            }
+            endGame.run();
+        } catch (InterruptedException e) {
+            logger.info("replay of " + journal + " stopped after " + keys + " key presses.");
+        } catch (IOException e) {
+            logger.severe("cannot replay " + journal + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One of many games hosted in the same JVM (see Rooms). A room has its own configuration, environment (with its own
+ * metrics and event bus), table, dealer and players, but no threads: the dealer and the players run as tasks of the
+ * room on a shared scheduler. The tasks of a room run one at a time, in submission order, so the game entities of a
+ * room never run concurrently with each other; the tasks of different rooms run in parallel.
+ *
+ * The event bus of a room is not started, so its listeners are called on the room's tasks. A room has no user
+ * interface, so its events are only logged.
+ */
+public class Room implements Executor {
+
+    private static final int BATCH = 64; // tasks run before letting the other rooms run
+
+    public final String name;
+    public final Env env;
+    public final Table table;
+    public final Dealer dealer;
+    public final Player[] players;
+
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final CountDownLatch ended = new CountDownLatch(1);
+
+    /**
+     * @param name       - the name of the room (used for its logger and metrics).
+     * @param properties - the configuration of the game in the room.
+     * @param scheduler  - the scheduler shared by the rooms.
+     */
+    Room(String name, Properties properties, ScheduledExecutorService scheduler) {
+        this.name = name;
+        this.scheduler = scheduler;
+        Logger logger = Logger.getLogger("SetGameLogger." + name); // the records go to the handlers of the game logger
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        env = new Env(logger, config, null, util);
+        env.metrics.register(logger, name);
+
+        table = new Table(env);
+        players = new Player[config.players];
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+    }
+
+    /**
+     * Starts the game.
+     */
+    void start() {
+        execute(() -> dealer.start(this));
+    }
+
+    /**
+     * Runs a task of the room (after the tasks submitted before it).
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (draining.compareAndSet(false, true)) submitDrain();
+    }
+
+    /**
+     * Runs a task of the room after a delay.
+     *
+     * @return - the future of the delay, to cancel it.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        try {
+            return scheduler.schedule(() -> execute(task), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) { // the rooms are closed
+            return null;
+        }
+    }
+
+    private void submitDrain() {
+        try {
+            scheduler.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < BATCH; i++) {
+            Runnable task = tasks.poll();
+            if (task == null) break;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                env.logger.log(Level.SEVERE, "task of room " + name + " failed", e);
+            }
+        }
+        if (!tasks.isEmpty()) {
+            submitDrain(); // continue later, after the other rooms that are waiting
+            return;
+        }
+        draining.set(false);
+        if (!tasks.isEmpty() && draining.compareAndSet(false, true)) submitDrain(); // a task added just now
+    }
+
+    /**
+     * Called by the dealer when the game is over.
+     */
+    public void ended() {
+        ended.countDown();
+    }
+
+    /**
+     * Waits until the game is over.
+     *
+     * @return - true if the game is over, false if the time ran out.
+     */
+    public boolean awaitEnd(long timeoutMillis) throws InterruptedException {
+        return ended.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ends the game (if it is not over yet) and waits for it to end.
+     */
+    void close() throws InterruptedException {
+        dealer.terminate();
+        if (!awaitEnd(env.config.endGamePauseMillies + 1000))
+            env.logger.severe("room " + name + " did not end in time");
+        env.metrics.unregister();
+    }
+}
@@ -0,0 +1,89 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent games (rooms) in one JVM. All the rooms share one scheduler with a fixed number of threads,
+ * which both runs their tasks and times their delays (turn timeouts, freezes, computer players), so the number of
+ * threads does not grow with the number of rooms.
+ */
+public class Rooms implements AutoCloseable {
+
+    private final Logger logger;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+
+    /**
+     * @param logger  - the logger.
+     * @param threads - the number of threads shared by the rooms.
+     */
+    public Rooms(Logger logger, int threads) {
+        this.logger = logger;
+        AtomicInteger count = new AtomicInteger();
+        scheduler = new ScheduledThreadPoolExecutor(threads, task -> {
+            ThreadLogger thread = new ThreadLogger(task, "room-worker-" + count.incrementAndGet(), logger);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true); // the turn timeouts are cancelled all the time
+    }
+
+    /**
+     * Opens a room and starts its game.
+     *
+     * @param name       - the name of the room, unique among the open rooms.
+     * @param properties - the configuration of the game in the room.
+     * @return - the room.
+     */
+    public Room open(String name, Properties properties) {
+        Room room = new Room(name, properties, scheduler);
+        if (rooms.putIfAbsent(name, room) != null) {
+            room.env.metrics.unregister();
+            throw new IllegalArgumentException("room " + name + " is already open");
+        }
+        room.start();
+        logger.info("room " + name + " opened");
+        return room;
+    }
+
+    /**
+     * Ends the game of a room (if it is not over yet) and removes the room.
+     */
+    public void close(Room room) throws InterruptedException {
+        if (rooms.remove(room.name, room)) {
+            room.close();
+            logger.info("room " + room.name + " closed");
+        }
+    }
+
+    /**
+     * @return - the open rooms.
+     */
+    public Collection<Room> rooms() {
+        return new ArrayList<>(rooms.values());
+    }
+
+    /**
+     * Closes all the rooms and stops the threads. If interrupted, stops the threads without waiting for the rooms and
+     * keeps the interrupt status set.
+     */
+    @Override
+    public void close() {
+        try {
+            for (Room room : rooms()) close(room);
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
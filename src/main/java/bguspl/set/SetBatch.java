@@ -0,0 +1,22 @@
+package bguspl.set;
+
+/**
+ * Tests many triples of cards at once (see Util.testSets), with the features of every card packed into one int: the
+ * value of feature i in bits 3i to 3i + 2. The three cards form a set iff every 3-bit field of the sum of their packed
+ * features is 0, 3 or 6. The vector implementation is built only by the vector profile (see pom.xml).
+ */
+interface SetBatch {
+
+    /**
+     * Tests the triples from the first one on, as far as the implementation goes (e.g. a whole number of vectors).
+     *
+     * @param packed - the packed features of every card.
+     * @param fields - the number of features.
+     * @param a      - the first card of every triple.
+     * @param b      - the second card of every triple.
+     * @param c      - the third card of every triple.
+     * @param out    - set to true for the triples that form a set, as many triples as its length.
+     * @return - the number of triples tested, the caller tests the rest.
+     */
+    int testSets(int[] packed, int fields, int[] a, int[] b, int[] c, boolean[] out);
+}
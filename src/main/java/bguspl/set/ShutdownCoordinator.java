@@ -0,0 +1,80 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Stops a group of threads within a fixed time. All the threads are told to stop (and interrupted, to leave blocking
+ * waits) at once, so they wind down in parallel, and then they are joined in the reverse order of their registration
+ * against one overall deadline. The shutdown takes about as long as the slowest thread, not the sum of them.
+ */
+public class ShutdownCoordinator {
+
+    private static final class Entry {
+        final Thread thread;
+        final Runnable signal;
+
+        Entry(Thread thread, Runnable signal) {
+            this.thread = thread;
+            this.signal = signal;
+        }
+    }
+
+    private final Logger logger;
+    private final long timeoutMillis;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * @param logger        - the logger.
+     * @param timeoutMillis - the time all the threads together get to stop.
+     */
+    public ShutdownCoordinator(Logger logger, long timeoutMillis) {
+        this.logger = logger;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Adds a thread, in the order the threads were created in.
+     *
+     * @param thread - the thread.
+     * @param signal - tells the code running on the thread to stop (called before the thread is interrupted).
+     */
+    public synchronized void add(Thread thread, Runnable signal) {
+        entries.add(new Entry(thread, signal));
+    }
+
+    /**
+     * Stops the threads and waits for them until the deadline.
+     *
+     * @return - true iff all the threads terminated in time.
+     */
+    public synchronized boolean shutdown() {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            entries.get(i).signal.run();
+            entries.get(i).thread.interrupt();
+        }
+
+        boolean interrupted = false;
+        boolean all = true;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Thread thread = entries.get(i).thread;
+            long left = deadline - System.currentTimeMillis();
+            try {
+                if (left > 0) thread.join(left);
+            } catch (InterruptedException e) {
+                interrupted = true; // keep waiting for the others, the deadline still holds
+                i++;
+                continue;
+            }
+            if (thread.isAlive()) { // the threads log their own termination, only the ones that did not are logged here
+                logger.severe("thread " + thread.getName() + " did not terminate within " + timeoutMillis + " ms");
+                all = false;
+            }
+        }
+        entries.clear();
+        if (interrupted) Thread.currentThread().interrupt();
+        return all;
+    }
+}
@@ -0,0 +1,247 @@
+package bguspl.set;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The changes of the table (cards, tokens, scores, countdown) as numbered binary frames, for any number of spectators.
+ *
+ * The feed is subscribed to the GameEventBus. Every change is encoded once into a frame and stored in a ring of the
+ * last FRAMES frames, and the spectators pull the frames through their own Cursor. So the game (and the event bus)
+ * pays the same for 1 spectator as for 1000. A spectator that falls more than FRAMES frames behind gets a snapshot of
+ * the whole table instead (a RESET frame followed by the state) and continues from there.
+ *
+ * A frame is a type byte followed by fixed fields, all big endian (shorts for players, unsigned shorts for slots and
+ * cards):
+ * <pre>
+ * CARD_PLACED    slot, card
+ * CARD_REMOVED   slot
+ * TOKEN_PLACED   player, slot
+ * TOKEN_REMOVED  player, slot
+ * SCORE          player, score (int)
+ * COUNTDOWN      milliseconds (int), warn (byte)
+ * FREEZE         player, milliseconds (int)
+ * WINNERS        count, players
+ * RESET          (no fields) the table is cleared, a snapshot follows
+ * ELAPSED        milliseconds (int), the time since the last action when there is no countdown
+ * </pre>
+ * Countdown frames are only sent when the displayed countdown changes (the seconds, or the hundredths of a second
+ * during the warning), and elapsed frames when the displayed seconds change.
+ */
+public class SpectatorFeed implements GameEventListener {
+
+    public static final byte CARD_PLACED = 2;
+    public static final byte CARD_REMOVED = 3;
+    public static final byte TOKEN_PLACED = 4;
+    public static final byte TOKEN_REMOVED = 5;
+    public static final byte SCORE = 6;
+    public static final byte COUNTDOWN = 7;
+    public static final byte FREEZE = 8;
+    public static final byte WINNERS = 9;
+    public static final byte RESET = 10;
+    public static final byte ELAPSED = 11;
+
+    private static final int FRAMES = 4096; // a power of 2
+
+    private static final class Frame {
+        final long version;
+        final ByteBuffer bytes;
+
+        Frame(long version, ByteBuffer bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Metrics metrics;
+    private final AtomicReferenceArray<Frame> frames = new AtomicReferenceArray<>(FRAMES);
+    private volatile long version; // the version of the last frame
+    private final List<Runnable> publishListeners = new CopyOnWriteArrayList<>();
+
+    // the state of the table, for snapshots (guarded by this)
+    private final int[] slotToCard;
+    private final boolean[][] tokens;
+    private final int[] scores;
+    private long countdownMillis = -1;
+    private boolean countdownWarn;
+    private long elapsedMillis = -1;
+    private Frame snapshot; // the last snapshot taken, reused until the next frame
+
+    public SpectatorFeed(Config config, Metrics metrics) {
+        this.metrics = metrics;
+        slotToCard = new int[config.tableSize];
+        Arrays.fill(slotToCard, -1);
+        tokens = new boolean[config.players][config.tableSize];
+        scores = new int[config.players];
+    }
+
+    /**
+     * Adds an action to run after every frame, e.g. to wake up a thread that serves spectators. It is called on the
+     * event bus thread, so it must be quick.
+     */
+    public void onPublish(Runnable listener) {
+        publishListeners.add(listener);
+    }
+
+    /**
+     * @return - a cursor that starts with a snapshot of the table.
+     */
+    public Cursor subscribe() {
+        return new Cursor();
+    }
+
+    /**
+     * @return - the version of the last frame.
+     */
+    public long version() {
+        return version;
+    }
+
+    private static ByteBuffer frame(byte type, int size) {
+        return ByteBuffer.allocate(1 + size).put(type);
+    }
+
+    private void publish(ByteBuffer bytes) {
+        bytes.flip();
+        long next = version + 1;
+        frames.set((int) (next & (FRAMES - 1)), new Frame(next, bytes.asReadOnlyBuffer()));
+        version = next;
+        snapshot = null;
+        for (Runnable listener : publishListeners) listener.run();
+    }
+
+    @Override
+    public synchronized void onCardPlaced(GameEvent.CardPlaced event) {
+        slotToCard[event.slot] = event.card;
+        publish(frame(CARD_PLACED, 4).putShort((short) event.slot).putShort((short) event.card));
+    }
+
+    @Override
+    public synchronized void onCardRemoved(GameEvent.CardRemoved event) {
+        slotToCard[event.slot] = -1;
+        for (boolean[] playerTokens : tokens) playerTokens[event.slot] = false;
+        publish(frame(CARD_REMOVED, 2).putShort((short) event.slot));
+    }
+
+    @Override
+    public synchronized void onTokenPlaced(GameEvent.TokenPlaced event) {
+        tokens[event.player][event.slot] = true;
+        publish(frame(TOKEN_PLACED, 4).putShort((short) event.player).putShort((short) event.slot));
+    }
+
+    @Override
+    public synchronized void onTokenRemoved(GameEvent.TokenRemoved event) {
+        tokens[event.player][event.slot] = false;
+        publish(frame(TOKEN_REMOVED, 4).putShort((short) event.player).putShort((short) event.slot));
+    }
+
+    @Override
+    public synchronized void onScoreChanged(GameEvent.ScoreChanged event) {
+        scores[event.player] = event.score;
+        publish(frame(SCORE, 6).putShort((short) event.player).putInt(event.score));
+    }
+
+    @Override
+    public synchronized void onCountdownChanged(GameEvent.CountdownChanged event) {
+        long unit = event.warn ? 10 : 1000;
+        if (event.warn == countdownWarn && event.millies / unit == countdownMillis / unit) return;
+        countdownMillis = event.millies;
+        countdownWarn = event.warn;
+        publish(countdown());
+    }
+
+    private ByteBuffer countdown() {
+        return frame(COUNTDOWN, 5).putInt((int) Math.min(countdownMillis, Integer.MAX_VALUE)).put((byte) (countdownWarn ? 1 : 0));
+    }
+
+    @Override
+    public synchronized void onElapsedChanged(GameEvent.ElapsedChanged event) {
+        if (elapsedMillis >= 0 && event.millies / 1000 == elapsedMillis / 1000) return;
+        elapsedMillis = event.millies;
+        publish(elapsed());
+    }
+
+    private ByteBuffer elapsed() {
+        return frame(ELAPSED, 4).putInt((int) Math.min(elapsedMillis, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public synchronized void onFreezeChanged(GameEvent.FreezeChanged event) {
+        publish(frame(FREEZE, 6).putShort((short) event.player).putInt((int) event.millies));
+    }
+
+    @Override
+    public synchronized void onWinnersAnnounced(GameEvent.WinnersAnnounced event) {
+        ByteBuffer bytes = frame(WINNERS, 2 + 2 * event.players.length).putShort((short) event.players.length);
+        for (int player : event.players) bytes.putShort((short) player);
+        publish(bytes);
+    }
+
+    /**
+     * @return - the whole table as one frame: a RESET followed by the cards, tokens, scores and countdown, with the
+     * version of the last frame it includes.
+     */
+    private synchronized Frame snapshot() {
+        metrics.spectatorSnapshots.increment();
+        if (snapshot != null) return snapshot;
+        ByteBuffer bytes = ByteBuffer.allocate(1 + slotToCard.length * 5 * (1 + tokens.length) + scores.length * 7 + 6 + 5);
+        bytes.put(RESET);
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            if (slotToCard[slot] < 0) continue;
+            bytes.put(CARD_PLACED).putShort((short) slot).putShort((short) slotToCard[slot]);
+            for (int player = 0; player < tokens.length; player++)
+                if (tokens[player][slot]) bytes.put(TOKEN_PLACED).putShort((short) player).putShort((short) slot);
+        }
+        for (int player = 0; player < scores.length; player++)
+            if (scores[player] > 0) bytes.put(SCORE).putShort((short) player).putInt(scores[player]);
+        if (countdownMillis >= 0) {
+            ByteBuffer countdown = countdown();
+            countdown.flip();
+            bytes.put(countdown);
+        }
+        if (elapsedMillis >= 0) {
+            ByteBuffer elapsed = elapsed();
+            elapsed.flip();
+            bytes.put(elapsed);
+        }
+        bytes.flip();
+        snapshot = new Frame(version, bytes.asReadOnlyBuffer());
+        return snapshot;
+    }
+
+    /**
+     * The position of one spectator in the feed. A cursor is used by one thread.
+     */
+    public class Cursor {
+
+        private long next = -1; // the version of the next frame, -1 for a snapshot
+
+        /**
+         * @return - the next frame, a snapshot if this cursor is new or fell behind, or null if there is no new frame.
+         */
+        public ByteBuffer next() {
+            if (next >= 0) {
+                if (next > version) return null;
+                Frame frame = frames.get((int) (next & (FRAMES - 1)));
+                if (frame.version == next) {
+                    next++;
+                    return frame.bytes.duplicate();
+                }
+                // the frame was overwritten by a newer one, skip to a snapshot
+            }
+            Frame frame = snapshot();
+            next = frame.version + 1;
+            return frame.bytes.duplicate();
+        }
+
+        /**
+         * @return - the version of the last frame returned by this cursor.
+         */
+        public long version() {
+            return next - 1;
+        }
+    }
+}
@@ -80,6 +80,11 @@ public interface UserInterface {
      */
     void announceWinner(int[] players);
 
+    /**
+     * Hide the winner announcement and show the timer and the player score panel again, for a new game in the same window.
+     */
+    void newGame();
+
     /**
      * Programmatically closes the window.
      */
@@ -96,6 +96,12 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.announceWinner(players);
     }
 
+    @Override
+    public void newGame() {
+        logger.severe("starting a new game");
+        if (ui != null) ui.newGame();
+    }
+
     @Override
     public void dispose() {
         logger.severe("disposing of user interface elements");
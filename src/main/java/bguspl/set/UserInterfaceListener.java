@@ -0,0 +1,63 @@
+package bguspl.set;
+
+/**
+ * Shows the game events on the user interface.
+ */
+public class UserInterfaceListener implements GameEventListener {
+
+    private final UserInterface ui;
+
+    public UserInterfaceListener(UserInterface ui) {
+        this.ui = ui;
+    }
+
+    @Override
+    public void onCardPlaced(GameEvent.CardPlaced event) {
+        ui.placeCard(event.card, event.slot);
+    }
+
+    @Override
+    public void onCardRemoved(GameEvent.CardRemoved event) {
+        ui.removeCard(event.slot);
+    }
+
+    @Override
+    public void onTokenPlaced(GameEvent.TokenPlaced event) {
+        ui.placeToken(event.player, event.slot);
+    }
+
+    @Override
+    public void onTokenRemoved(GameEvent.TokenRemoved event) {
+        ui.removeToken(event.player, event.slot);
+    }
+
+    @Override
+    public void onCountdownChanged(GameEvent.CountdownChanged event) {
+        ui.setCountdown(event.millies, event.warn);
+    }
+
+    @Override
+    public void onElapsedChanged(GameEvent.ElapsedChanged event) {
+        ui.setElapsed(event.millies);
+    }
+
+    @Override
+    public void onScoreChanged(GameEvent.ScoreChanged event) {
+        ui.setScore(event.player, event.score);
+    }
+
+    @Override
+    public void onFreezeChanged(GameEvent.FreezeChanged event) {
+        ui.setFreeze(event.player, event.millies);
+    }
+
+    @Override
+    public void onWinnersAnnounced(GameEvent.WinnersAnnounced event) {
+        ui.announceWinner(event.players);
+    }
+
+    @Override
+    public void onNewGame(GameEvent.NewGame event) {
+        ui.newGame();
+    }
+}
@@ -4,10 +4,12 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -15,6 +17,9 @@ import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ *
+ * The game threads never touch the swing components directly. Every update is written into a buffer of pending
+ * changes which the event dispatch thread applies once per frame (see FrameBuffer).
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
@@ -23,6 +28,8 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final FrameBuffer frameBuffer;
+    private final Timer frameTimer;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
@@ -31,8 +38,9 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
 
         this.config = config;
+        frameBuffer = new FrameBuffer();
         timerPanel = new TimerPanel();
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(logger);
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
 
@@ -66,7 +74,117 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         addKeyListener(new InputManager(logger, config, players));
         addWindowListener(new WindowManager());
 
-        EventQueue.invokeLater(() -> setVisible(true));
+        frameTimer = new Timer(1000 / Math.max(1, config.frameRate), e -> frameBuffer.flush());
+        frameTimer.setCoalesce(true);
+
+        EventQueue.invokeLater(() -> {
+            setVisible(true);
+            frameTimer.start();
+        });
+    }
+
+    /**
+     * Holds the display changes requested by the game threads until the next frame.
+     * Writers never block: each pending value is kept in an atomic slot, and a later write to the same slot replaces
+     * the earlier one (e.g. only the last countdown value of a frame is drawn, and a token that was placed and removed
+     * again within a frame is never drawn at all).
+     */
+    private class FrameBuffer {
+
+        private static final int NONE = Integer.MIN_VALUE;
+        private static final int EMPTY_SLOT = -1;
+        private static final long NO_TIME = Long.MIN_VALUE;
+        private static final long COUNTDOWN = 0, COUNTDOWN_WARN = 1, ELAPSED = 2; // the low bits of a pending time
+
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        private final AtomicIntegerArray cards = new AtomicIntegerArray(config.tableSize); // card id or EMPTY_SLOT
+        private final AtomicIntegerArray tokens = new AtomicIntegerArray(config.players * config.tableSize); // 1 or 0
+        private final AtomicLong time = new AtomicLong(NO_TIME); // millies << 2 | COUNTDOWN / COUNTDOWN_WARN / ELAPSED
+        private final AtomicLongArray freezes = new AtomicLongArray(config.players);
+        private final AtomicIntegerArray scores = new AtomicIntegerArray(config.players);
+
+        private FrameBuffer() {
+            for (int i = 0; i < cards.length(); i++) cards.set(i, NONE);
+            for (int i = 0; i < tokens.length(); i++) tokens.set(i, NONE);
+            for (int i = 0; i < freezes.length(); i++) freezes.set(i, NO_TIME);
+            for (int i = 0; i < scores.length(); i++) scores.set(i, NONE);
+        }
+
+        private void placeCard(int card, int slot) {
+            gamePanel.cardImages.prioritize(card);
+            cards.set(slot, card);
+            dirty.set(true);
+        }
+
+        private void removeCard(int slot) {
+            cards.set(slot, EMPTY_SLOT);
+            dirty.set(true);
+        }
+
+        private void setToken(int player, int slot, boolean placed) {
+            tokens.set(player * config.tableSize + slot, placed ? 1 : 0);
+            dirty.set(true);
+        }
+
+        private void removeTokens(int slot) {
+            for (int player = 0; player < config.players; player++)
+                tokens.set(player * config.tableSize + slot, 0);
+            dirty.set(true);
+        }
+
+        private void setTime(long millies, long kind) {
+            time.set(Math.max(0, millies) << 2 | kind);
+            dirty.set(true);
+        }
+
+        private void setFreeze(int player, long millies) {
+            freezes.set(player, Math.max(0, millies));
+            dirty.set(true);
+        }
+
+        private void setScore(int player, int score) {
+            scores.set(player, score);
+            dirty.set(true);
+        }
+
+        /**
+         * Applies all pending changes to the swing components and repaints the grid cells that changed.
+         * Must be called from the event dispatch thread.
+         */
+        private void flush() {
+            if (!dirty.getAndSet(false)) return;
+
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                boolean changed = false;
+
+                int card = cards.getAndSet(slot, NONE);
+                if (card != NONE) changed = gamePanel.setCard(slot, card == EMPTY_SLOT ? null : card);
+
+                boolean tokensChanged = false;
+                for (int player = 0; player < config.players; player++) {
+                    int token = tokens.getAndSet(player * config.tableSize + slot, NONE);
+                    if (token != NONE) tokensChanged |= gamePanel.setToken(player, slot, token == 1);
+                }
+                if (tokensChanged) gamePanel.updateTokenText(slot);
+
+                if (changed) gamePanel.repaintSlot(slot);
+            }
+
+            long pendingTime = time.getAndSet(NO_TIME);
+            if (pendingTime != NO_TIME) {
+                long millies = pendingTime >> 2;
+                long kind = pendingTime & 3;
+                if (kind == ELAPSED) timerPanel.setElapsed(millies);
+                else timerPanel.setCountdown(millies, kind == COUNTDOWN_WARN);
+            }
+
+            for (int player = 0; player < config.players; player++) {
+                long freeze = freezes.getAndSet(player, NO_TIME);
+                if (freeze != NO_TIME) playersPanel.setFreeze(player, freeze);
+                int score = scores.getAndSet(player, NONE);
+                if (score != NONE) playersPanel.setScore(player, score);
+            }
+        }
     }
 
     private class TimerPanel extends JPanel {
@@ -102,40 +220,21 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     private class GamePanel extends JLayeredPane {
 
-        private final Image emptyCard;
-        private final Image[] deck;
-        private final Image[][] grid;
+        private final CardImages cardImages;
+        private final Integer[] slotToCard;
         private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
-
-        private GamePanel() {
+        private GamePanel(Logger logger) {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
-            // init deck and load all pictures from png files
-            assert config.featureSize < 10; // otherwise there will be naming conflicts
-
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
-            grid = new Image[config.rows][config.columns];
+            // the cards on the table grid start as empty cards
+            slotToCard = new Integer[config.tableSize];
             tokenText = new JLabel[config.rows][config.columns];
             playerTokens = new boolean[config.players][config.rows][config.columns];
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
                     // init the JLabel selection overlay
                     tokenText[row][column] = new JLabel("");
                     tokenText[row][column].setVerticalAlignment(JLabel.TOP);
@@ -146,50 +245,47 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                     add(tokenText[row][column]);
                 }
             }
+
+            // the card images are decoded in the background, the slots showing a card are repainted once it is ready
+            cardImages = new CardImages(logger, config, card -> EventQueue.invokeLater(() -> repaintCard(card)));
         }
 
-        private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+        /**
+         * @return - true iff the card in the slot was changed.
+         */
+        private boolean setCard(int slot, Integer card) {
+            if (card == null ? slotToCard[slot] == null : card.equals(slotToCard[slot])) return false;
+            slotToCard[slot] = card;
+            return true;
         }
 
-        private void removeCard(int slot) {
+        /**
+         * @return - true iff the token of the player in the slot was changed.
+         */
+        private boolean setToken(int player, int slot, boolean placed) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            if (playerTokens[player][row][column] == placed) return false;
+            playerTokens[player][row][column] = placed;
+            return true;
         }
 
-        private void placeToken(int player, int slot) {
+        private void updateTokenText(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
             tokenText[row][column].setText(generatePlayersTokenText(row, column));
         }
 
-        private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
-        }
-
-        private void removeTokens(int slot) {
+        private void repaintSlot(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
         }
 
-        private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        private void repaintCard(int card) {
+            for (int slot = 0; slot < config.tableSize; slot++)
+                if (slotToCard[slot] != null && slotToCard[slot] == card)
+                    repaintSlot(slot);
         }
 
         private String generatePlayersTokenText(int row, int column) {
@@ -205,10 +301,12 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
+            // draw card images (only the cells intersecting the clip area are painted)
+            Rectangle clip = g.getClipBounds();
             for (int row = 0; row < config.rows; row++)
                 for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+                    if (clip == null || clip.intersects(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight))
+                        cardImages.draw(g, slotToCard[row * config.columns + column], (column * config.cellWidth), (row * config.cellHeight), this);
         }
     }
 
@@ -276,63 +374,78 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        frameBuffer.placeCard(card, slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        frameBuffer.removeCard(slot);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        frameBuffer.setToken(player, slot, true);
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        for (int slot = 0; slot < config.tableSize; slot++)
+            frameBuffer.removeTokens(slot);
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        frameBuffer.removeTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        frameBuffer.setToken(player, slot, false);
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        frameBuffer.setTime(millies, warn ? FrameBuffer.COUNTDOWN_WARN : FrameBuffer.COUNTDOWN);
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        frameBuffer.setTime(millies, FrameBuffer.ELAPSED);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        frameBuffer.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        frameBuffer.setScore(player, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        EventQueue.invokeLater(() -> {
+            frameBuffer.flush(); // draw the final state of the table before the announcement
+            playersPanel.setVisible(false);
+            winnerPanel.announceWinner(players);
+            winnerPanel.setVisible(true);
+        });
+    }
+
+    @Override
+    public void newGame() {
+        EventQueue.invokeLater(() -> {
+            frameBuffer.flush(); // the scores of the new game
+            winnerPanel.setVisible(false);
+            timerPanel.setVisible(true);
+            playersPanel.setVisible(true);
+        });
     }
 
     @Override
     public void dispose() {
+        frameTimer.stop();
         super.dispose();
     }
 }
@@ -13,8 +13,54 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of every card packed into 3-bit fields for testSets (see SetBatch), or null if a set is not three
+     * cards or the features do not fit in an int.
+     */
+    private final int[] packed;
+
+    /**
+     * The vector implementation of testSets, or null if it was not built (see the vector profile in pom.xml) or the
+     * JVM runs without --add-modules jdk.incubator.vector.
+     */
+    private static final SetBatch VECTOR_BATCH = vectorBatch();
+
+    private static final int LEGAL_FIELD_SUMS = 1 | 1 << 3 | 1 << 6; // bit s is set iff a field sum of s is legal
+
+    /**
+     * The precomputed completions of the card pairs (null to compute them).
+     */
+    private final CompletionTable completions;
+
     public UtilImpl(Config config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config      - the game settings.
+     * @param completions - the precomputed completions of the card pairs of the deck (null to compute them).
+     */
+    public UtilImpl(Config config, CompletionTable completions) {
         this.config = config;
+        this.completions = completions;
+        if (config.featureSize == 3 && config.featureCount <= 10) {
+            packed = new int[config.deckSize];
+            int[] features = new int[config.featureCount];
+            for (int card = 0; card < packed.length; card++) {
+                cardToFeatures(card, features);
+                for (int i = 0; i < features.length; i++) packed[card] |= features[i] << 3 * i;
+            }
+        } else {
+            packed = null;
+        }
+    }
+
+    private static SetBatch vectorBatch() {
+        try {
+            return (SetBatch) Class.forName("bguspl.set.VectorSetBatch").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -40,6 +86,7 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
+        if (completions != null && cards.length == 3) return completions.complete(cards[0], cards[1]) == cards[2];
         int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
@@ -64,6 +111,22 @@ public class UtilImpl implements Util {
         return true;
     }
 
+    @Override
+    public void testSets(int[] a, int[] b, int[] c, boolean[] out) {
+        if (packed == null) {
+            for (int i = 0; i < out.length; i++) out[i] = testSet(new int[]{a[i], b[i], c[i]});
+            return;
+        }
+        int from = VECTOR_BATCH == null ? 0 : VECTOR_BATCH.testSets(packed, config.featureCount, a, b, c, out);
+        for (int i = from; i < out.length; i++) {
+            int sum = packed[a[i]] + packed[b[i]] + packed[c[i]];
+            int legal = 1;
+            for (int field = 0; field < config.featureCount; field++)
+                legal &= LEGAL_FIELD_SUMS >>> (sum >>> 3 * field & 7);
+            out[i] = legal != 0;
+        }
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
@@ -90,6 +153,28 @@ public class UtilImpl implements Util {
         return sets;
     }
 
+    @Override
+    public int completeSet(int[] cards) {
+        if (completions != null && cards.length == 2) return completions.complete(cards[0], cards[1]);
+        int[][] features = cardsToFeatures(cards);
+        int allValues = config.featureSize * (config.featureSize - 1) / 2;
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            boolean sameSame = true, butDifferent = true;
+            int sum = 0, seen = 0;
+            for (int[] cardFeatures : features) {
+                int value = cardFeatures[i];
+                if (value != features[0][i]) sameSame = false;
+                if ((seen & 1 << value) != 0) butDifferent = false;
+                seen |= 1 << value;
+                sum += value;
+            }
+            if (!sameSame && !butDifferent) return -1;
+            card = card * config.featureSize + (sameSame ? features[0][i] : allValues - sum);
+        }
+        return card;
+    }
+
     public void spin() {
         if (config.randomSpinMax <= 0) return;
         long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
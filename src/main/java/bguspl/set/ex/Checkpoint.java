@@ -0,0 +1,246 @@
+package bguspl.set.ex;
+
+import bguspl.set.ThreadLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * A snapshot of a running game: the deck, the cards and tokens on the table, the scores and the time left until the
+ * reshuffle, and the state of the random generators of the dealer, so a resumed game deals the cards the original game
+ * would have dealt. The dealer takes it on its own thread (while no other thread changes the cards), a Writer saves it
+ * in the background, and a game can be resumed from the saved file (see Dealer.resume).
+ *
+ * The file is a fixed header (magic, version, card and table dimensions, player counts) followed by the fields below,
+ * all ints except for the longs; arrays are written as their length followed by their elements, and the random
+ * generators as the length and the bytes of their serialized form.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x53455443; // "SETC"
+    private static final int VERSION = 2;
+
+    public final int featureSize;
+    public final int featureCount;
+    public final int rows;
+    public final int columns;
+    public final int humanPlayers;
+    public final int computerPlayers;
+
+    /**
+     * The serialized random generators of the dealer (first) and of the regions of the table, if it is split.
+     */
+    final byte[][] randoms;
+
+    /**
+     * The seed of the next layout (see Dealer.prepareNextLayout).
+     */
+    final long nextLayoutSeed;
+
+    /**
+     * The milliseconds left until the reshuffle.
+     */
+    final long remainingMillis;
+
+    final int[] deck;
+    final int[] slotToCard; // -1 for an empty slot
+    final int[][] tokens; // the slots of the tokens of every player
+    final int[] scores;
+
+    Checkpoint(int featureSize, int featureCount, int rows, int columns, int humanPlayers, int computerPlayers,
+               byte[][] randoms, long nextLayoutSeed, long remainingMillis, int[] deck, int[] slotToCard, int[][] tokens,
+               int[] scores) {
+        this.featureSize = featureSize;
+        this.featureCount = featureCount;
+        this.rows = rows;
+        this.columns = columns;
+        this.humanPlayers = humanPlayers;
+        this.computerPlayers = computerPlayers;
+        this.randoms = randoms;
+        this.nextLayoutSeed = nextLayoutSeed;
+        this.remainingMillis = remainingMillis;
+        this.deck = deck;
+        this.slotToCard = slotToCard;
+        this.tokens = tokens;
+        this.scores = scores;
+    }
+
+    /**
+     * Saves the checkpoint, replacing the file at once (so a crash while saving leaves the previous checkpoint).
+     *
+     * @param file - the checkpoint file.
+     */
+    void write(Path file) throws IOException {
+        int size = 6 * Integer.BYTES + 2 * Long.BYTES + (5 + randoms.length + tokens.length + deck.length + slotToCard.length + scores.length) * Integer.BYTES;
+        for (byte[] random : randoms) size += random.length;
+        for (int[] playerTokens : tokens) size += playerTokens.length * Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + size);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putInt(featureSize).putInt(featureCount).putInt(rows).putInt(columns);
+        buffer.putInt(humanPlayers).putInt(computerPlayers);
+        buffer.putInt(randoms.length);
+        for (byte[] random : randoms) buffer.putInt(random.length).put(random);
+        buffer.putLong(nextLayoutSeed).putLong(remainingMillis);
+        putInts(buffer, deck);
+        putInts(buffer, slotToCard);
+        buffer.putInt(tokens.length);
+        for (int[] playerTokens : tokens) putInts(buffer, playerTokens);
+        putInts(buffer, scores);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        for (int value : values) buffer.putInt(value);
+    }
+
+    /**
+     * Loads a saved checkpoint.
+     *
+     * @param file - the checkpoint file.
+     * @return - the checkpoint.
+     */
+    public static Checkpoint read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            if (buffer.getInt() != MAGIC) throw new IOException(file + " is not a game checkpoint");
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("unsupported checkpoint version " + version);
+            int featureSize = buffer.getInt();
+            int featureCount = buffer.getInt();
+            int rows = buffer.getInt();
+            int columns = buffer.getInt();
+            int humanPlayers = buffer.getInt();
+            int computerPlayers = buffer.getInt();
+            byte[][] randoms = new byte[buffer.getInt()][];
+            for (int i = 0; i < randoms.length; i++) {
+                randoms[i] = new byte[buffer.getInt()];
+                buffer.get(randoms[i]);
+                toRandom(randoms[i]);
+            }
+            long nextLayoutSeed = buffer.getLong();
+            long remainingMillis = buffer.getLong();
+            int[] deck = getInts(buffer);
+            int[] slotToCard = getInts(buffer);
+            int[][] tokens = new int[buffer.getInt()][];
+            for (int player = 0; player < tokens.length; player++) tokens[player] = getInts(buffer);
+            int[] scores = getInts(buffer);
+            return new Checkpoint(featureSize, featureCount, rows, columns, humanPlayers, computerPlayers, randoms,
+                    nextLayoutSeed, remainingMillis, deck, slotToCard, tokens, scores);
+        } catch (RuntimeException | ClassNotFoundException e) { // a truncated or corrupt file
+            throw new IOException("corrupt checkpoint " + file + ": " + e);
+        }
+    }
+
+    private static int[] getInts(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) values[i] = buffer.getInt();
+        return values;
+    }
+
+    /**
+     * @return - the state of a random generator (java.util.Random is serializable), to continue it after a resume.
+     */
+    static byte[] state(Random random) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(random);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return - a random generator in the state it was saved in.
+     */
+    Random random(int index) {
+        try {
+            return toRandom(randoms[index]);
+        } catch (IOException | ClassNotFoundException e) { // was read by read(), so it cannot be corrupt
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Random toRandom(byte[] state) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state))) {
+            // nothing but a Random (whose serialized form holds only primitives) is read from the file
+            in.setObjectInputFilter(info -> info.serialClass() == null || info.serialClass() == Random.class
+                    ? ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED);
+            return (Random) in.readObject();
+        }
+    }
+
+    /**
+     * Saves checkpoints on a background thread. Only the latest checkpoint matters: if a new one is submitted before
+     * the previous one was saved, the previous one is skipped.
+     */
+    static class Writer {
+
+        private final Logger logger;
+        private final Path file;
+        private final AtomicReference<Checkpoint> pending = new AtomicReference<>();
+        private final ThreadLogger thread;
+        private volatile boolean closed;
+
+        Writer(Logger logger, Path file) {
+            this.logger = logger;
+            this.file = file;
+            thread = new ThreadLogger(this::run, "checkpoint-writer", logger);
+            thread.setDaemon(true);
+            thread.startWithLog();
+        }
+
+        void submit(Checkpoint checkpoint) {
+            pending.set(checkpoint);
+            LockSupport.unpark(thread);
+        }
+
+        private void run() {
+            while (!closed) {
+                if (!writePending()) LockSupport.park(this);
+            }
+            writePending();
+        }
+
+        private boolean writePending() {
+            Checkpoint checkpoint = pending.getAndSet(null);
+            if (checkpoint == null) return false;
+            try {
+                checkpoint.write(file);
+            } catch (IOException e) {
+                logger.severe("cannot write checkpoint " + file + ": " + e);
+            }
+            return true;
+        }
+
+        /**
+         * Saves the pending checkpoint (if any) and stops the writer thread.
+         */
+        void close() {
+            closed = true;
+            LockSupport.unpark(thread);
+            try {
+                thread.joinWithLog();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
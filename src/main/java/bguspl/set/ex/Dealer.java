@@ -1,14 +1,27 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvent;
+import bguspl.set.Room;
+import bguspl.set.ShutdownCoordinator;
 import bguspl.set.ex.Table.setSlotsAndPlayerId;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.logging.Level;
 import java.util.stream.IntStream;
 
 /**
@@ -40,44 +53,270 @@ public class Dealer implements Runnable {
     /**
      * The time when the dealer needs to reshuffle the deck due to turn timeout.
      */
-    private long reshuffleTime = Long.MAX_VALUE;
+    private volatile long reshuffleTime = Long.MAX_VALUE;
+
+    /**
+     * The time of the last action (reshuffle or set collected), for the elapsed time display (turnTimeoutMillis = 0).
+     */
+    private long lastActionTime = Long.MAX_VALUE;
+
+    /**
+     * Shuffles the deck (seeded, so the same game deals the same cards). Used by the dealer thread only; the workers of
+     * the regions have their own, seeded from this one.
+     */
+    private Random random;
+
+    /**
+     * The checkpoint the game was resumed from, until the random generators of the regions and the seed of the next
+     * layout are restored from it (null if the game was not resumed).
+     */
+    private Checkpoint resumedFrom;
+
+    /**
+     * The legal sets left among the cards in the game (the deck and the table), to end the game as soon as there is none.
+     */
+    private SetTracker setsLeft;
+
+    /**
+     * The cards of the next reshuffle, prepared while the dealer is idle (null until then), and the seed it is chosen
+     * with (taken when the round starts, so the layout does not depend on when the dealer was idle).
+     */
+    private NextLayout nextLayout;
+    private long nextLayoutSeed;
+
+    /**
+     * Saves the checkpoints of the game (null if there are no checkpoints), and when the next one is due.
+     */
+    private Checkpoint.Writer checkpoints;
+    private long nextCheckpointTime;
+
+    /**
+     * The room the game is played in (null when the dealer runs on its own thread), the next timer tick of the dealer
+     * in the room, and whether the game in the room is over.
+     */
+    private Room room;
+    private ScheduledFuture<?> tick;
+    private boolean finished;
+
+    /**
+     * The dealer thread (null in a room), and the threads it started, to stop them together at the end of the game.
+     */
+    private volatile Thread dealerThread;
+    private ShutdownCoordinator shutdown;
+
+    /**
+     * The regions of the table when it is split (null for a single dealer). A region is a band of slots with its own
+     * worker thread, which checks the sets within the region and refills its slots from the deck; the dealer thread
+     * checks the sets across regions and reshuffles (the worker of each region deals and collects its slots for the
+     * dealer). Whoever changes the slots of a region holds the lock of the region.
+     */
+    private Region[] regions;
+    private volatile boolean regionsRunning;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        random = new Random(env.config.randomSeed);
+        setsLeft = trackSets(deck);
     }
 
     /**
-     * The dealer thread starts here (main loop for the dealer thread).
+     * The dealer thread starts here (main loop for the dealer thread). Plays config.games games one after the other
+     * (or until the game is terminated), resetting the game in place between them.
      */
     @Override
     public void run() {
 
+        dealerThread = Thread.currentThread();
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        for (int game = 1; ; game++) {
+            playGame();
+            if (terminate || game == env.config.games || !rematch(game + 1)) break;
+        }
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Plays one game: starts the players, deals until no set is left (or the game is terminated), stops the players
+     * and announces the winners.
+     */
+    private void playGame() {
+        shutdown = new ShutdownCoordinator(env.logger, env.config.shutdownTimeoutMillis);
         try {
-            env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+            if (!env.config.checkpointFile.isEmpty()) {
+                checkpoints = new Checkpoint.Writer(env.logger, Paths.get(env.config.checkpointFile));
+                nextCheckpointTime = System.currentTimeMillis() + env.config.checkpointMillis;
+            }
+
+            int regionCount = Math.max(1, Math.min(env.config.regions, env.config.tableSize));
+            if (env.config.turnTimeoutMillis <= 0) regionCount = 1; // the regions cannot guarantee a set on the table
+            if (regionCount > 1) startRegions(regionCount);
 
             // creat and start all the players' Threds
             for (Player currPlayer : players) {
                 String name = "PlayerThered " + currPlayer.getId();
-                new Thread(currPlayer, name).start();
+                Thread thread = new Thread(currPlayer, name);
+                shutdown.add(thread, currPlayer::terminate);
+                thread.start();
             }
 
             // main dealer's loop
+            long reshuffleStart = 0;
+            FlightEvents.Reshuffle reshuffleEvent = null;
             while (!shouldFinish()) {
                 placeCardsOnTable();
+                if (reshuffleStart != 0) env.metrics.reshuffleNanos.record(System.nanoTime() - reshuffleStart);
+                if (reshuffleEvent != null) reshuffleEvent.commit();
+                roundStarted();
                 timerLoop();
                 updateTimerDisplay(true);
+                reshuffleStart = System.nanoTime();
+                reshuffleEvent = new FlightEvents.Reshuffle();
+                reshuffleEvent.begin();
+                if (!shouldFinish()) env.events.publish(new GameEvent.Reshuffle());
                 removeAllCardsFromTable();
             }
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
+        Thread.interrupted(); // the interrupt of terminate() was for the loop above
         close();
+        regions = null; // the workers of the regions were stopped with the players, the dealer handles the whole table
+        if (checkpoints != null) {
+            checkpoints.close();
+            if (!terminate) deleteCheckpoint(); // the game is over, there is nothing to resume
+        }
         removeAllCardsFromTable();
         announceWinners();
-        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Resets the game in place for the next game of the session: a full deck, an empty table and players with no
+     * score. The dealer thread, the user interface and the rest of the environment are kept; only the player threads
+     * are started again (by playGame).
+     *
+     * @param game - the number of the next game (starting from 1).
+     * @return - false if a player of the last game did not terminate, so no new game can start.
+     */
+    private boolean rematch(int game) {
+        long start = System.nanoTime();
+        for (Player player : players) {
+            Thread thread = player.gettThread();
+            if (thread != null && thread.isAlive()) {
+                env.logger.severe("player " + player.id + " is still running, cannot start game " + game);
+                return false;
+            }
+        }
+        deck.clear();
+        for (int card = 0; card < env.config.deckSize; card++) deck.add(card);
+        setsLeft = trackSets(deck);
+        currentSet = null;
+        nextLayout = null;
+        reshuffleTime = Long.MAX_VALUE;
+        lastActionTime = Long.MAX_VALUE;
+        table.setsToCheck.clear(); // the claims that came after the last set
+        for (Player player : players) player.reset();
+        env.events.publish(new GameEvent.NewGame(game));
+        env.logger.info("game " + game + " is ready after " + (System.nanoTime() - start) / 1000 + " us");
+        return true;
+    }
+
+    /**
+     * Starts the game in a room: instead of the dealer and player threads, the dealer and the players run as tasks of
+     * the room, woken up by the timer of the room and by the claims of the players. Call it as a task of the room.
+     *
+     * @param room - the room.
+     */
+    public void start(Room room) {
+        this.room = room;
+        env.logger.info("dealer of " + room.name + " starting.");
+        for (Player player : players) player.start(room);
+        if (shouldFinish()) {
+            finish();
+            return;
+        }
+        placeCardsOnTable();
+        roundStarted();
+        if (reshuffleTime == Long.MAX_VALUE) updateTimerDisplay(true); // not resumed
+        scheduleTick();
+    }
+
+    /**
+     * One wakeup of the dealer in a room, like one round of the timer loop: updates the countdown, checks the claims,
+     * and reshuffles the table when the countdown is over.
+     */
+    private void tick() {
+        if (finished) return;
+        if (terminate) {
+            finish();
+            return;
+        }
+        try {
+            env.metrics.dealerWakeups.increment();
+            updateTimerDisplay(false);
+            checkClaims();
+            if (finished) return;
+            if (nextLayout == null) prepareNextLayout();
+            if (System.currentTimeMillis() >= reshuffleTime) {
+                updateTimerDisplay(true);
+                long reshuffleStart = System.nanoTime();
+                env.events.publish(new GameEvent.Reshuffle());
+                removeAllCardsFromTable();
+                if (shouldFinish()) {
+                    finish();
+                    return;
+                }
+                placeCardsOnTable();
+                env.metrics.reshuffleNanos.record(System.nanoTime() - reshuffleStart);
+                roundStarted();
+            }
+        } finally {
+            if (!finished) scheduleTick(); // even if this tick failed, the game goes on
+        }
+    }
+
+    /**
+     * Schedules the next tick: every second, or every 10 milliseconds during the countdown warning.
+     */
+    private void scheduleTick() {
+        long timeLeft = reshuffleTime - System.currentTimeMillis();
+        long delay = timeLeft > env.config.turnTimeoutWarningMillis ? 1000 : 10;
+        tick = room.schedule(this::tick, Math.max(0, Math.min(delay, timeLeft)));
+    }
+
+    /**
+     * Checks the claims waiting for the dealer (in a room).
+     */
+    private void checkClaims() {
+        while (!finished && (currentSet = table.setsToCheck.poll()) != null) {
+            removeCardsFromTable();
+            placeCardsOnTable();
+        }
+        if (!finished && shouldFinish()) finish(); // the last set was collected
+    }
+
+    /**
+     * Called by a player that submitted a claim. In a room, the claim is checked right away (the dealer thread
+     * wakes up by itself).
+     */
+    void claimSubmitted() {
+        if (room != null) room.execute(this::checkClaims);
+    }
+
+    /**
+     * Ends the game in a room: stops the players, announces the winners and tells the room.
+     */
+    private void finish() {
+        if (finished) return;
+        finished = true;
+        if (tick != null) tick.cancel(false);
+        close();
+        removeAllCardsFromTable();
+        announceWinners();
+        env.logger.info("dealer of " + room.name + " terminated.");
+        room.ended();
     }
 
     /**
@@ -85,12 +324,108 @@ public class Dealer implements Runnable {
      * not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && setsLeft.anySetLeft() && System.currentTimeMillis() < reshuffleTime) {
             sleepUntilWokenOrTimeout();
             updateTimerDisplay(false);
-            removeCardsFromTable();
-            placeCardsOnTable();
+            if (regions == null) {
+                removeCardsFromTable();
+                placeCardsOnTable();
+            } else if (currentSet != null) {
+                checkAcrossRegions(currentSet);
+            }
+            if (regions == null && currentSet == null && nextLayout == null) prepareNextLayout();
+            if (checkpoints != null && System.currentTimeMillis() >= nextCheckpointTime) {
+                lockRegions();
+                try {
+                    checkpoints.submit(checkpoint());
+                } finally {
+                    unlockRegions();
+                }
+                nextCheckpointTime = System.currentTimeMillis() + env.config.checkpointMillis;
+            }
+        }
+    }
+
+    /**
+     * Takes a checkpoint of the game. The caller holds the locks of all the regions, so the cards and the deck (which
+     * only the dealer thread and the workers of the regions change) are consistent; the tokens are read slot by slot
+     * while the players keep playing.
+     *
+     * @return - the checkpoint.
+     */
+    private Checkpoint checkpoint() {
+        long start = System.nanoTime();
+        // the states of the random generators, so a resumed game deals the same cards as this one (which goes on as if
+        // there were no checkpoints)
+        byte[][] randoms = new byte[regions == null ? 1 : 1 + regions.length][];
+        randoms[0] = Checkpoint.state(random);
+        for (int i = 1; i < randoms.length; i++) randoms[i] = Checkpoint.state(regions[i - 1].random);
+
+        int[] slotToCard = new int[env.config.tableSize];
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            Integer card = table.slotToCard[slot];
+            slotToCard[slot] = card == null ? -1 : card;
+        }
+        int[][] tokens = new int[players.length][];
+        int[] scores = new int[players.length];
+        for (int player = 0; player < players.length; player++) {
+            final int id = player;
+            tokens[player] = IntStream.range(0, env.config.tableSize).filter(slot -> table.playerHasToken(id, slot)).toArray();
+            scores[player] = players[player].score();
+        }
+        Checkpoint checkpoint = new Checkpoint(env.config.featureSize, env.config.featureCount, env.config.rows,
+                env.config.columns, env.config.humanPlayers, env.config.computerPlayers, randoms, nextLayoutSeed,
+                Math.max(0, reshuffleTime - System.currentTimeMillis()),
+                deck.stream().mapToInt(Integer::intValue).toArray(), slotToCard, tokens, scores);
+        env.metrics.checkpointNanos.record(System.nanoTime() - start);
+        return checkpoint;
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(Paths.get(env.config.checkpointFile));
+        } catch (IOException e) {
+            env.logger.severe("cannot delete checkpoint " + env.config.checkpointFile + ": " + e);
+        }
+    }
+
+    /**
+     * Continues a saved game: restores the deck, the cards and tokens on the table, the scores and the countdown.
+     * Call it before the dealer thread starts.
+     *
+     * @param checkpoint - the saved game, with the same settings as this game.
+     */
+    public void resume(Checkpoint checkpoint) {
+        if (checkpoint.featureSize != env.config.featureSize || checkpoint.featureCount != env.config.featureCount
+                || checkpoint.slotToCard.length != env.config.tableSize || checkpoint.scores.length != players.length)
+            throw new IllegalArgumentException("the checkpoint does not match the game settings");
+
+        deck.clear();
+        for (int card : checkpoint.deck) deck.add(card);
+        random = checkpoint.random(0);
+        resumedFrom = checkpoint;
+        for (int slot = 0; slot < checkpoint.slotToCard.length; slot++)
+            if (checkpoint.slotToCard[slot] >= 0) table.setCard(checkpoint.slotToCard[slot], slot);
+        for (int player = 0; player < players.length; player++) {
+            for (int slot : checkpoint.tokens[player]) players[player].restoreToken(slot);
+            players[player].restoreScore(checkpoint.scores[player]);
         }
+        if (env.config.turnTimeoutMillis > 0) reshuffleTime = System.currentTimeMillis() + checkpoint.remainingMillis;
+        List<Integer> cards = new ArrayList<>(deck);
+        for (int card : checkpoint.slotToCard)
+            if (card >= 0) cards.add(card);
+        setsLeft = trackSets(cards);
+    }
+
+    /**
+     * Counts the sets among the cards in the game, which takes a while for large decks (every combination of
+     * featureSize - 1 cards is completed once), so the time it takes is logged.
+     */
+    private SetTracker trackSets(Iterable<Integer> cards) {
+        long start = System.nanoTime();
+        SetTracker tracker = new SetTracker(env.util, env.config.featureSize, env.config.deckSize, cards);
+        env.logger.info("counted " + tracker.sets() + " sets in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return tracker;
     }
 
     /**
@@ -98,9 +433,12 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
 
-        System.out.println("Dealer.terminate() preforemed by Thered" + Thread.currentThread().getName());
+        env.logger.fine(() -> "Dealer.terminate() preforemed by Thered" + Thread.currentThread().getName());
 
         terminate = true;
+        if (room != null) room.execute(this::finish);
+        Thread thread = dealerThread;
+        if (thread != null && thread != Thread.currentThread()) thread.interrupt(); // stop waiting for claims
     }
 
     /**
@@ -109,7 +447,7 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !setsLeft.anySetLeft();
     }
 
     /**
@@ -118,22 +456,282 @@ public class Dealer implements Runnable {
     private void removeCardsFromTable() {
 
         if (currentSet != null) {
-            // check if set is legal
-            int[] cards = table.slotToCards(currentSet.setSlots);
-
-            // send penalty or punishment to player
-            if (env.util.testSet(cards)) { // the set is leigal
-                players[currentSet.playerId].accepetResponde(1);
-                // remove the carsd that constitute a set
-                for (int slot : currentSet.setSlots) {
-                    removeCardAndTokens(slot);
+            checkSet(currentSet);
+        }
+    }
+
+    /**
+     * Checks the set claimed by a player, answers the player and removes the cards of a legal set.
+     *
+     * @param set - the claim.
+     */
+    private void checkSet(setSlotsAndPlayerId set) {
+        for (int slot : set.setSlots) {
+            if (!table.playerHasToken(set.playerId, slot)) { // a card of the set was removed meanwhile
+                players[set.playerId].accepetResponde(0);
+                return;
+            }
+        }
+        // check if set is legal
+        int[] cards = table.slotToCards(set.setSlots);
+
+        // send penalty or punishment to player
+        boolean legal = env.util.testSet(cards);
+        env.events.publish(new GameEvent.ClaimResolved(set.playerId, set.setSlots, legal));
+        long latency = System.nanoTime() - set.submitTime;
+        env.metrics.claimToVerdictNanos.record(latency);
+        (legal ? env.metrics.legalClaims : env.metrics.illegalClaims).increment();
+        FlightEvents.ClaimResolved claimEvent = new FlightEvents.ClaimResolved();
+        if (claimEvent.shouldCommit()) {
+            claimEvent.player = set.playerId;
+            claimEvent.legal = legal;
+            claimEvent.latency = latency;
+            claimEvent.commit();
+        }
+        if (legal) { // the set is leigal
+            players[set.playerId].accepetResponde(1);
+            // remove the carsd that constitute a set
+            for (int slot : set.setSlots) {
+                removeCardAndTokens(slot);
+            }
+            setsLeft.remove(cards);
+            if (nextLayout != null) nextLayout.remove(cards);
+            updateTimerDisplay(true);
+        } else {
+            players[set.playerId].accepetResponde(-1); // the set is illigal
+        }
+    }
+
+    /**
+     * Splits the table into regions and starts their workers. Call it before the players start.
+     *
+     * @param count - the number of regions.
+     */
+    private void startRegions(int count) {
+        regions = new Region[count];
+        table.regionSetsToCheck.clear(); // the queues of the last game
+        for (int i = 0; i < count; i++) table.regionSetsToCheck.add(new LinkedBlockingQueue<>());
+        table.regions = count;
+        regionsRunning = true;
+        for (int i = 0; i < count; i++) {
+            boolean restore = resumedFrom != null && resumedFrom.randoms.length == count + 1;
+            regions[i] = new Region(i, restore ? resumedFrom.random(i + 1) : new Random(random.nextLong()));
+            regions[i].thread = new Thread(regions[i], "region-" + i);
+            shutdown.add(regions[i].thread, () -> regionsRunning = false);
+            regions[i].thread.start();
+        }
+        env.logger.info("the table is split into " + count + " regions");
+    }
+
+    /**
+     * Locks all the regions (if the table is split), e.g. to reshuffle the whole table.
+     */
+    private void lockRegions() {
+        if (regions != null)
+            for (Region region : regions) region.lock.lock();
+    }
+
+    private void unlockRegions() {
+        if (regions != null)
+            for (int i = regions.length - 1; i >= 0; i--) regions[i].lock.unlock();
+    }
+
+    /**
+     * Runs an action on every region at once, each on the worker of the region and under its lock (e.g. to deal all
+     * the regions in parallel, since every card placed or removed takes the table delay), and waits for all of them.
+     */
+    private void inRegions(Consumer<Region> action) {
+        CountDownLatch done = new CountDownLatch(regions.length);
+        for (Region region : regions) {
+            region.execute(() -> {
+                region.lock.lock();
+                try {
+                    action.accept(region);
+                } finally {
+                    region.lock.unlock();
+                    done.countDown();
                 }
-                updateTimerDisplay(true);
-            } else {
-                players[currentSet.playerId].accepetResponde(-1); // the set is illigal
+            });
+        }
+        boolean interrupted = false;
+        while (done.getCount() > 0) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
 
+    /**
+     * Deals the empty slots of all the regions. The cards are drawn here, region by region, so the seeded deal does
+     * not depend on the order the workers happen to run in; the workers only place them.
+     */
+    private void dealRegions() {
+        int[] empty = new int[regions.length];
+        for (int slot = 0; slot < env.config.tableSize; slot++)
+            if (table.slotToCard[slot] == null) empty[table.regionOf(slot)]++;
+        int[][] cards = new int[regions.length][];
+        for (int i = 0; i < regions.length; i++)
+            cards[i] = IntStream.generate(() -> drawCard(random)).limit(empty[i]).filter(card -> card >= 0).toArray();
+        inRegions(region -> region.deal(cards[region.index]));
+    }
 
+    /**
+     * Checks a set across regions: locks the regions of its slots in order (a worker only ever holds the lock of its
+     * own region), checks the set and refills its slots.
+     */
+    private void checkAcrossRegions(setSlotsAndPlayerId set) {
+        boolean[] involved = new boolean[regions.length];
+        for (int slot : set.setSlots) involved[table.regionOf(slot)] = true;
+        for (int i = 0; i < regions.length; i++)
+            if (involved[i]) regions[i].lock.lock();
+        try {
+            checkSet(set);
+            refill(set.setSlots, random);
+        } finally {
+            for (int i = regions.length - 1; i >= 0; i--)
+                if (involved[i]) regions[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Places cards from the deck on the given slots that are empty. The caller holds the locks of their regions.
+     *
+     * @param random - the random of the calling thread (the dealer's or the region's).
+     */
+    private void refill(int[] slots, Random random) {
+        for (int slot : slots) {
+            if (table.slotToCard[slot] != null) continue;
+            int card = drawCard(random);
+            if (card < 0) return;
+            table.placeCard(card, slot);
+        }
+    }
+
+    /**
+     * Takes a random card out of the deck, which the workers of the regions share.
+     *
+     * @param random - the random of the calling thread (the dealer's or the region's).
+     * @return - the card, or -1 if the deck is empty.
+     */
+    private int drawCard(Random random) {
+        synchronized (deck) {
+            if (deck.isEmpty()) return -1;
+            int index = random.nextInt(deck.size());
+            int card = deck.get(index);
+            deck.set(index, deck.get(deck.size() - 1));
+            deck.remove(deck.size() - 1);
+            return card;
+        }
+    }
+
+    /**
+     * A region of the table and its worker, which checks the sets within the region and runs the commands of the
+     * dealer (see inRegions).
+     */
+    private class Region implements Runnable {
+
+        private final int index;
+        private final ReentrantLock lock = new ReentrantLock();
+        private Thread thread;
+
+        /**
+         * Draws the cards that refill the region after a set (seeded by the dealer or restored from a checkpoint, used
+         * under the lock).
+         */
+        private final Random random;
+
+        /**
+         * The commands of the dealer, and the entry that wakes the worker up from waiting for sets when one is added.
+         */
+        private final LinkedBlockingQueue<Runnable> commands = new LinkedBlockingQueue<>();
+        private final setSlotsAndPlayerId wakeUp = table.new setSlotsAndPlayerId(new int[0], -1);
+
+        Region(int index, Random random) {
+            this.index = index;
+            this.random = random;
+        }
+
+        /**
+         * Runs a command on the worker of the region.
+         */
+        void execute(Runnable command) {
+            commands.add(command);
+            table.regionSetsToCheck.get(index).add(wakeUp);
+        }
+
+        /**
+         * Places the given cards on the empty slots of the region, in order.
+         */
+        void deal(int[] cards) {
+            int next = 0;
+            for (int slot = 0; slot < env.config.tableSize && next < cards.length; slot++)
+                if (table.regionOf(slot) == index && table.slotToCard[slot] == null) table.placeCard(cards[next++], slot);
+        }
+
+        /**
+         * Returns the cards of the region to the deck.
+         */
+        void collect() {
+            for (int slot = 0; slot < env.config.tableSize; slot++) {
+                Integer card = table.slotToCard[slot];
+                if (table.regionOf(slot) != index || card == null) continue;
+                synchronized (deck) {
+                    deck.add(card);
+                }
+                removeCardAndTokens(slot);
+            }
+        }
+
+        @Override
+        public void run() {
+            env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+            while (regionsRunning) {
+                setSlotsAndPlayerId set;
+                try {
+                    set = table.regionSetsToCheck.get(index).poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                for (Runnable command; (command = commands.poll()) != null; ) {
+                    try {
+                        command.run();
+                    } catch (RuntimeException e) {
+                        env.logger.log(Level.SEVERE, "command of region " + index + " failed", e);
+                    }
+                }
+                if (set == null || set == wakeUp) continue;
+                env.metrics.dealerWakeups.increment();
+                lock.lock();
+                try {
+                    checkSet(set);
+                    refill(set.setSlots, random);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+        }
+    }
+
+    /**
+     * Emits the flight recorder event of a new round.
+     */
+    private void roundStarted() {
+        nextLayout = null;
+        if (resumedFrom != null) { // the round that was interrupted by the checkpoint goes on
+            nextLayoutSeed = resumedFrom.nextLayoutSeed;
+            resumedFrom = null;
+        } else {
+            nextLayoutSeed = random.nextLong();
+        }
+        FlightEvents.RoundStart event = new FlightEvents.RoundStart();
+        if (event.shouldCommit()) {
+            event.cardsOnTable = table.countCards();
+            event.cardsInDeck = deck.size();
+            event.commit();
         }
     }
 
@@ -141,16 +739,122 @@ public class Dealer implements Runnable {
      * Check if any cards can be removed from the deck and placed on the table.
      */
     private void placeCardsOnTable() {
-        Collections.shuffle(deck);
+        if (table.countCards() == table.slotToCard.length) return;
+        if (regions != null) {
+            dealRegions();
+            return;
+        }
+        if (nextLayout != null && table.countCards() == 0 && placeNextLayout()) return;
+        // shuffle only when dealing, so the order of the cards does not depend on how often the dealer woke up
+        Collections.shuffle(deck, random);
+        if (env.config.turnTimeoutMillis <= 0) dealSetFirst();
         for (int slot = 0; slot < table.slotToCard.length; slot++) {
 
-            if (table.slotToCard[slot] == null) { // the slot is empty
+            if (table.slotToCard[slot] == null && !deck.isEmpty()) { // the slot is empty
 
                 int newCard = deck.remove(0);
-                table.placeCard(newCard, slot);
-                env.ui.placeCard(newCard, slot);
+                if (room == null) table.placeCard(newCard, slot);
+                else table.setCard(newCard, slot); // nothing sleeps in a room
             }
         }
+        if (env.config.turnTimeoutMillis <= 0 && !tableHasSet() && setsLeft.anySetLeft())
+            reshuffleTime = 0; // the set left does not fit in the empty slots, reshuffle at the next wakeup
+    }
+
+    /**
+     * Chooses the cards of the next reshuffle among the cards in the game (see NextLayout).
+     */
+    private void prepareNextLayout() {
+        List<Integer> cards = new ArrayList<>(deck);
+        cards.addAll(cardsOnTable());
+        nextLayout = new NextLayout(env.util, env.config.featureSize, env.config.deckSize, cards,
+                env.config.tableSize, new Random(nextLayoutSeed));
+    }
+
+    /**
+     * Deals the prepared layout on the empty table.
+     *
+     * @return - false if the layout cannot be used (it has no set when one is needed, or it does not match the deck).
+     */
+    private boolean placeNextLayout() {
+        NextLayout layout = nextLayout;
+        nextLayout = null;
+        if (env.config.turnTimeoutMillis <= 0 && layout.sets() == 0) return false;
+        int[] cards = layout.cards();
+        boolean[] inLayout = new boolean[env.config.deckSize];
+        for (int card : cards) inLayout[card] = true;
+        int found = 0;
+        for (int card : deck)
+            if (inLayout[card]) found++;
+        if (found != cards.length) return false;
+
+        deck.removeIf(card -> inLayout[card]);
+        for (int slot = 0; slot < cards.length; slot++) {
+            if (room == null) table.placeCard(cards[slot], slot);
+            else table.setCard(cards[slot], slot);
+        }
+        return true;
+    }
+
+    /**
+     * Without a countdown the table is not reshuffled by time, so every deal must leave a set on it: if the cards left
+     * on the table have no set, moves the fewest deck cards that complete a set to the top of the (shuffled) deck, so
+     * they are dealt first.
+     */
+    private void dealSetFirst() {
+        if (tableHasSet()) return;
+        int free = table.slotToCard.length - table.countCards();
+        List<Integer> onTable = cardsOnTable();
+        boolean[] inDeck = new boolean[env.config.deckSize];
+        for (int card : deck) inDeck[card] = true;
+
+        int[] cards = null;
+        if (env.config.featureSize == 3) { // a set is completed by its third card, try 1, then 2, then 3 deck cards
+            for (int i = 0; cards == null && i < onTable.size(); i++)
+                for (int j = i + 1; cards == null && j < onTable.size(); j++) {
+                    int third = env.util.completeSet(new int[]{onTable.get(i), onTable.get(j)});
+                    if (third >= 0 && inDeck[third]) cards = new int[]{third};
+                }
+            for (int i = 0; cards == null && free >= 2 && i < onTable.size(); i++)
+                for (int j = 0; cards == null && j < deck.size(); j++) {
+                    int third = env.util.completeSet(new int[]{onTable.get(i), deck.get(j)});
+                    if (third >= 0 && inDeck[third]) cards = new int[]{deck.get(j), third};
+                }
+            for (int i = 0; cards == null && free >= 3 && i < deck.size(); i++)
+                for (int j = i + 1; cards == null && j < deck.size(); j++) {
+                    int third = env.util.completeSet(new int[]{deck.get(i), deck.get(j)});
+                    if (third >= 0 && inDeck[third]) cards = new int[]{deck.get(i), deck.get(j), third};
+                }
+        } else if (free >= env.config.featureSize) { // only a set from the deck alone
+            List<int[]> sets = env.util.findSets(deck, 1);
+            if (!sets.isEmpty()) cards = sets.get(0);
+        }
+        if (cards == null) return;
+        for (int card : cards) {
+            deck.remove((Integer) card);
+            deck.add(0, card);
+        }
+    }
+
+    /**
+     * @return - true iff the cards on the table include a legal set.
+     */
+    private boolean tableHasSet() {
+        List<Integer> onTable = cardsOnTable();
+        if (env.config.featureSize != 3) return !env.util.findSets(onTable, 1).isEmpty();
+        for (int i = 0; i < onTable.size(); i++)
+            for (int j = i + 1; j < onTable.size(); j++) {
+                int third = env.util.completeSet(new int[]{onTable.get(i), onTable.get(j)});
+                if (third >= 0 && table.cardToSlot[third] != null) return true;
+            }
+        return false;
+    }
+
+    private List<Integer> cardsOnTable() {
+        List<Integer> cards = new ArrayList<>();
+        for (Integer card : table.slotToCard)
+            if (card != null) cards.add(card);
+        return cards;
     }
 
     /**
@@ -166,12 +870,22 @@ public class Dealer implements Runnable {
         } catch (InterruptedException e) {
 
         }
+        env.metrics.dealerWakeups.increment();
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Reset and/or update the countdown and the countdown display (or the elapsed time display, or nothing, in the
+     * modes without a countdown).
      */
     private void updateTimerDisplay(boolean reset) {
+        if (env.config.turnTimeoutMillis <= 0) {
+            if (reset) reshuffleTime = Long.MAX_VALUE;
+            if (env.config.turnTimeoutMillis < 0) return;
+            long now = System.currentTimeMillis();
+            if (reset || lastActionTime == Long.MAX_VALUE) lastActionTime = now;
+            env.events.publish(new GameEvent.ElapsedChanged(now - lastActionTime));
+            return;
+        }
 
         long timeLeft;
 
@@ -185,7 +899,7 @@ public class Dealer implements Runnable {
         timeLeft = Math.max(0, timeLeft); // stay positive :)
         boolean warningTimeZone = (timeLeft <= env.config.turnTimeoutWarningMillis);
 
-        env.ui.setCountdown(timeLeft, warningTimeZone);
+        env.events.publish(new GameEvent.CountdownChanged(timeLeft, warningTimeZone));
 
     }
 
@@ -193,6 +907,10 @@ public class Dealer implements Runnable {
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() {
+        if (regions != null) {
+            inRegions(Region::collect);
+            return;
+        }
 
         for (int slot = 0; slot < env.config.tableSize; slot++) {
             if (table.slotToCard[slot] != null) {
@@ -217,7 +935,8 @@ public class Dealer implements Runnable {
             }
         }
         int[] winnersIdArrray = winnersIds.stream().mapToInt(Integer::intValue).toArray();
-        env.ui.announceWinner(winnersIdArrray);
+        env.events.publish(new GameEvent.WinnersAnnounced(winnersIdArrray));
+        if (room != null || terminate) return; // the room ends right away, and so does a game that was stopped
 
         try {
             Thread.sleep(env.config.endGamePauseMillies);
@@ -236,26 +955,20 @@ public class Dealer implements Runnable {
                 players[playerId].removeToken(slot);
             }
         }
-        table.removeCard(slot);
+        if (room == null) table.removeCard(slot);
+        else table.clearCard(slot);
 
     }
 
     public void close() {
-        // terminate all the players
-        for (int i = players.length - 1; i >= 0; i--) {
-            Player currentPlayer = players[i];
-            currentPlayer.terminate();
-
-            try {
-                Thread playThread = currentPlayer.gettThread();
-                System.out.println(
-                        "Thered" + Thread.currentThread().getName() + " preforem join() on" + playThread.getName());
-                playThread.join();
-            } catch (InterruptedException e) {
-            }
-
-        } // end of for loop
-
+        if (room != null) { // no threads to join
+            for (int i = players.length - 1; i >= 0; i--) players[i].terminate();
+            return;
+        }
+        // terminate all the players and the workers of the regions at once, and wait for them (in reverse order) until
+        // the shutdown timeout
+        if (shutdown != null && !shutdown.shutdown())
+            env.logger.severe("some threads did not terminate, the game goes on closing without them");
     }
 
 }
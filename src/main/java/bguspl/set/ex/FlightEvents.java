@@ -0,0 +1,108 @@
+package bguspl.set.ex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the game, so a recording of a game can be analysed in JDK Mission Control next to
+ * the GC and thread data.
+ *
+ * All the events are disabled by default: when they are not enabled in a running recording, creating and committing
+ * them does nothing (and the JIT removes the allocations). To record them, enable them on the command line, e.g.
+ * -XX:StartFlightRecording:filename=game.jfr,+bguspl.set.SlotLock#enabled=true,+bguspl.set.ClaimResolved#enabled=true
+ */
+final class FlightEvents {
+
+    private FlightEvents() {}
+
+    @Name("bguspl.set.RoundStart")
+    @Label("Round Start")
+    @Category({"Set Game", "Dealer"})
+    @Description("The dealer dealt a new table and started the turn countdown")
+    @Enabled(false)
+    static final class RoundStart extends Event {
+        @Label("Cards On Table")
+        int cardsOnTable;
+
+        @Label("Cards In Deck")
+        int cardsInDeck;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Category({"Set Game", "Dealer"})
+    @Description("From the turn timeout until the new table was dealt")
+    @Enabled(false)
+    static final class Reshuffle extends Event {
+    }
+
+    @Name("bguspl.set.ClaimResolved")
+    @Label("Claim Resolved")
+    @Category({"Set Game", "Dealer"})
+    @Description("The dealer checked the set a player submitted")
+    @Enabled(false)
+    static final class ClaimResolved extends Event {
+        @Label("Player")
+        int player;
+
+        @Label("Legal")
+        boolean legal;
+
+        @Label("Latency")
+        @Description("From the player submitting the set until the verdict")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("bguspl.set.Freeze")
+    @Label("Player Freeze")
+    @Category({"Set Game", "Player"})
+    @Description("A player was frozen after a point or a penalty")
+    @Enabled(false)
+    static final class Freeze extends Event {
+        @Label("Player")
+        int player;
+
+        @Label("Penalty")
+        boolean penalty;
+    }
+
+    @Name("bguspl.set.TokenPlaced")
+    @Label("Token Placed")
+    @Category({"Set Game", "Player"})
+    @Enabled(false)
+    static final class TokenPlaced extends Event {
+        @Label("Player")
+        int player;
+
+        @Label("Slot")
+        int slot;
+    }
+
+    @Name("bguspl.set.TokenRemoved")
+    @Label("Token Removed")
+    @Category({"Set Game", "Player"})
+    @Enabled(false)
+    static final class TokenRemoved extends Event {
+        @Label("Player")
+        int player;
+
+        @Label("Slot")
+        int slot;
+    }
+
+    @Name("bguspl.set.SlotLock")
+    @Label("Slot Lock")
+    @Category({"Set Game", "Table"})
+    @Description("Waiting for the lock of a table slot")
+    @Enabled(false)
+    static final class SlotLock extends Event {
+        @Label("Slot")
+        int slot;
+    }
+}
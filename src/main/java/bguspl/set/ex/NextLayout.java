@@ -0,0 +1,112 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The cards of the next full table, chosen in advance during the round, so a reshuffle only has to place them.
+ *
+ * The layout is a random choice of cards among the cards still in the game (the deck and the table together, which
+ * is what the deck holds after the table is cleared). It stays valid as the round goes on: a card that leaves the game
+ * is replaced in the layout by a random card that is still in the game. The number of legal sets in the layout is kept
+ * with it.
+ */
+class NextLayout {
+
+    private final Util util;
+    private final int setSize;
+    private final Random random;
+    private final int[] cards; // the layout, then the other cards in the game, the first size of them
+    private final int[] position; // the index of every card in cards, -1 if it is not in the game
+    private final int layoutSize;
+    private int size;
+    private int sets;
+
+    /**
+     * @param util       - the utilities (for finding sets).
+     * @param setSize    - the number of cards in a set (config.featureSize).
+     * @param deckSize   - the number of cards in a full deck.
+     * @param gameCards  - the cards in the game.
+     * @param layoutSize - the number of cards in the layout (config.tableSize, or less if there are not enough cards).
+     * @param random     - chooses the cards.
+     */
+    NextLayout(Util util, int setSize, int deckSize, Iterable<Integer> gameCards, int layoutSize, Random random) {
+        this.util = util;
+        this.setSize = setSize;
+        this.random = random;
+        cards = new int[deckSize];
+        position = new int[deckSize];
+        Arrays.fill(position, -1);
+        for (int card : gameCards) {
+            if (position[card] >= 0) continue;
+            position[card] = size;
+            cards[size++] = card;
+        }
+        this.layoutSize = Math.min(layoutSize, size);
+        for (int i = 0; i < this.layoutSize; i++) swap(i, i + random.nextInt(size - i)); // a partial shuffle
+        sets = countSets();
+    }
+
+    /**
+     * @return - the cards of the layout, in the order of the slots.
+     */
+    synchronized int[] cards() {
+        return Arrays.copyOf(cards, Math.min(layoutSize, size));
+    }
+
+    /**
+     * @return - the number of legal sets in the layout.
+     */
+    synchronized int sets() {
+        return sets;
+    }
+
+    /**
+     * Takes cards out of the game (e.g. a collected set), replacing the ones in the layout.
+     */
+    synchronized void remove(int[] removed) {
+        boolean changed = false;
+        for (int card : removed) {
+            int index = position[card];
+            if (index < 0) continue;
+            if (index < layoutSize) { // the last card in the game or a random one that is not in the layout takes its place
+                int other = size > layoutSize ? layoutSize + random.nextInt(size - layoutSize) : size - 1;
+                swap(index, other);
+                changed = true;
+                index = other;
+            }
+            swap(index, size - 1);
+            position[card] = -1;
+            size--;
+        }
+        if (changed) sets = countSets();
+    }
+
+    private void swap(int i, int j) {
+        int card = cards[i];
+        cards[i] = cards[j];
+        cards[j] = card;
+        position[cards[i]] = i;
+        position[cards[j]] = j;
+    }
+
+    private int countSets() {
+        int count = Math.min(layoutSize, size);
+        if (setSize != 3) {
+            List<Integer> layout = new ArrayList<>();
+            for (int i = 0; i < count; i++) layout.add(cards[i]);
+            return util.findSets(layout, Integer.MAX_VALUE).size();
+        }
+        int found = 0;
+        for (int i = 0; i < count; i++)
+            for (int j = i + 1; j < count; j++) {
+                int third = util.completeSet(new int[]{cards[i], cards[j]});
+                if (third >= 0 && position[third] > j && position[third] < count) found++;
+            }
+        return found;
+    }
+}
@@ -1,15 +1,21 @@
 package bguspl.set.ex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import javax.print.event.PrintJobListener;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvent;
+import bguspl.set.Room;
 
 /**
  * This class manages the players' threads and data
@@ -28,6 +34,7 @@ public class Player implements Runnable {
      * Game entities.
      */
     private final Table table;
+    private final Dealer dealer;
 
     /**
      * The id of the player (starting from 0).
@@ -37,13 +44,13 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate
      * key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
 
     /**
      * True iff the player is human (not a computer player).
@@ -62,14 +69,29 @@ public class Player implements Runnable {
 
     private ArrayBlockingQueue<Integer> myTokens; // store the slots that the playes placed a token on
 
-    private LinkedBlockingQueue<Integer> tokensToPlace; // store the slots that the players !inted! to place a token on
+    private LinkedBlockingQueue<KeyPress> tokensToPlace; // store the slots that the players !inted! to place a token on
+    private long keyPressTime; // when the key of the token currently being placed was pressed (0 if unknown)
     private final int MAX_WAITING_TOKENS = 32; // use for the AI Thered.
 
     private LinkedBlockingQueue<Integer> gotResponse; // store the response of the dealer. 1 for leagal set and -1 for
                                                       // illigal set.
+    private volatile boolean waitingForResponse; // true while the player waits for the dealer to check its set
 
     private final int NUM_OF_PRMITED_TOKENS;
 
+    /**
+     * The room the game is played in (null when the player runs on its own thread), and whether the player is frozen
+     * in the room (the key presses wait until it is not).
+     */
+    private Room room;
+    private boolean frozen;
+
+    /**
+     * The state of the AI of a computer player: its random choices, and whether it waits for a chance to press a set.
+     */
+    private Random aiRandom;
+    private boolean goForSet;
+
     /**
      * The class constructor.
      *
@@ -83,6 +105,7 @@ public class Player implements Runnable {
     public Player(Env env, Dealer dealer, Table table, int id, boolean human) {
         this.env = env;
         this.table = table;
+        this.dealer = dealer;
         this.id = id;
         this.human = human;
         NUM_OF_PRMITED_TOKENS = env.config.featureSize;
@@ -107,15 +130,7 @@ public class Player implements Runnable {
         while (!terminate) {
 
             try {
-                int slotToplaceToken = tokensToPlace.take();
-
-                if (!table.playerHasToken(this.id, slotToplaceToken)) {
-                    placeToken(slotToplaceToken);
-                } else { // the player alredy has token at this slot
-                    removeToken(slotToplaceToken);
-
-                }
-
+                handleKeyPress(tokensToPlace.take());
             } catch (InterruptedException e) {
                 break;
             }
@@ -123,8 +138,9 @@ public class Player implements Runnable {
         }
 
         if (!human) {
+            Thread.interrupted(); // the interrupt of terminate() was for the loop above
             try {
-                aiThread.join();
+                aiThread.join(env.config.shutdownTimeoutMillis);
             } catch (InterruptedException ignored) {
             }
         }
@@ -134,6 +150,52 @@ public class Player implements Runnable {
 
     }
 
+    /**
+     * Places or removes the token of a key press.
+     */
+    private void handleKeyPress(KeyPress keyPress) {
+        int slotToplaceToken = keyPress.slot;
+        keyPressTime = keyPress.time;
+
+        if (!table.playerHasToken(this.id, slotToplaceToken)) {
+            placeToken(slotToplaceToken);
+        } else { // the player alredy has token at this slot
+            removeToken(slotToplaceToken);
+
+        }
+    }
+
+    /**
+     * Starts the player in a room: the key presses are handled as tasks of the room, and a computer player presses its
+     * keys from timer tasks instead of a thread. Called by the dealer.
+     *
+     * @param room - the room.
+     */
+    void start(Room room) {
+        this.room = room;
+        if (!human) {
+            aiRandom = new Random(env.config.randomSeed + id * 0x9E3779B97F4A7C15L);
+            room.execute(this::aiTask);
+        }
+    }
+
+    /**
+     * Handles the waiting key presses in a room, until the player is frozen or waits for the dealer.
+     */
+    private void handleKeyPresses() {
+        KeyPress keyPress;
+        while (!terminate && !frozen && !waitingForResponse && (keyPress = tokensToPlace.poll()) != null)
+            handleKeyPress(keyPress);
+    }
+
+    /**
+     * One step of the AI of a computer player in a room, then the next one after the delay.
+     */
+    private void aiTask() {
+        if (terminate) return;
+        room.schedule(this::aiTask, Math.max(1, aiStep()));
+    }
+
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of
      * this thread repeatedly generates
@@ -144,15 +206,11 @@ public class Player implements Runnable {
         // note: this is a very, very smart AI (!)
         aiThread = new Thread(() -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+            aiRandom = new Random(env.config.randomSeed + id * 0x9E3779B97F4A7C15L); // a different sequence per player
             while (!terminate) {
-                if (tokensToPlace.size() < MAX_WAITING_TOKENS) { // a limit to the nuber of token in the line.
-                    int randomKeyPress = new Random().nextInt(env.config.tableSize);
-                    this.keyPressed(randomKeyPress);
-                }
+                long delay = aiStep();
                 try {
-                    synchronized (this) {
-                        Thread.sleep(2);
-                    }
+                    if (delay > 0) Thread.sleep(delay);
                 } catch (InterruptedException ignored) {
                 }
             }
@@ -166,16 +224,79 @@ public class Player implements Runnable {
     }
 
     /**
-     * Called when the game should be terminated.
+     * Presses a key (or the keys of a set) like a player would.
+     *
+     * @return - the milliseconds to wait until the next step.
+     */
+    private long aiStep() {
+        long delay = env.config.computerKeyDelayMillis;
+        goForSet = goForSet || aiRandom.nextDouble() < env.config.computerSetProbability;
+        if (goForSet) { // wait until the pending key presses are handled, then press a set
+            if (tokensToPlace.isEmpty() && !waitingForResponse) {
+                pressSet(aiRandom);
+                goForSet = false;
+            } else {
+                delay = Math.max(delay, 1);
+            }
+        } else if (tokensToPlace.size() >= MAX_WAITING_TOKENS) { // a limit to the nuber of token in the line.
+            delay = Math.max(delay, 1);
+        } else {
+            int randomKeyPress = aiRandom.nextInt(env.config.tableSize);
+            this.keyPressed(randomKeyPress);
+        }
+        return delay;
+    }
+
+    /**
+     * Presses the keys of a legal set on the table (if there is one), removing the player's other tokens first.
+     * The table may change in the meantime, so the set is not guaranteed to still be there when the keys are handled.
+     */
+    private void pressSet(Random random) {
+        List<Integer> cards = Arrays.stream(table.slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        List<int[]> sets = env.util.findSets(cards, Integer.MAX_VALUE);
+        if (table.regions > 1) { // prefer the sets within a region, which its worker checks in parallel with the others
+            List<int[]> inRegion = sets.stream().filter(this::inOneRegion).collect(Collectors.toList());
+            if (!inRegion.isEmpty()) sets = inRegion;
+        }
+        if (sets.isEmpty()) return;
+
+        List<Integer> slots = new ArrayList<>();
+        for (int card : sets.get(random.nextInt(sets.size()))) {
+            Integer slot = table.cardToSlot[card];
+            if (slot == null) return; // the card was just removed
+            slots.add(slot);
+        }
+        for (Integer slot : myTokens)
+            if (!slots.contains(slot)) keyPressed(slot);
+        for (Integer slot : slots)
+            if (!table.playerHasToken(id, slot)) keyPressed(slot);
+    }
+
+    /**
+     * @return - true if all the cards of a set lie in one region of the table.
+     */
+    private boolean inOneRegion(int[] set) {
+        int region = -1;
+        for (int card : set) {
+            Integer slot = table.cardToSlot[card];
+            if (slot == null || region >= 0 && table.regionOf(slot) != region) return false;
+            region = table.regionOf(slot);
+        }
+        return true;
+    }
+
+    /**
+     * Called when the game should be terminated. Does not wait for the threads of the player, the dealer waits for
+     * all the players together (see Dealer.close).
      */
     public void terminate() {
 
         this.terminate = true; // affect both the playes Thered and the AI Thered if exsit.
-        playerThread.interrupt();
-        try{
-            playerThread.join();
-        } catch (InterruptedException ignored){}
-
+        if (room != null) return; // no threads in a room
+        Thread ai = aiThread;
+        if (ai != null) ai.interrupt();
+        Thread player = playerThread;
+        if (player != null) player.interrupt();
     }
 
     /**
@@ -185,7 +306,9 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-        tokensToPlace.add(slot);
+        env.events.publish(new GameEvent.KeyPressed(id, slot));
+        tokensToPlace.add(new KeyPress(slot));
+        if (room != null) room.execute(this::handleKeyPresses);
     }
 
     /**
@@ -196,55 +319,66 @@ public class Player implements Runnable {
      */
     public void point() {
 
-        System.out.println("player " + this.id + ".point");
+        env.logger.fine(() -> "player " + this.id + ".point");
 
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
 
-        env.ui.setScore(this.id, ++score); // incrise the score and update the ui
-        env.ui.setFreeze(this.id, env.config.pointFreezeMillis); // set the ui to indicate the player as at freez
-
-        long sleepTime = env.config.pointFreezeMillis;
-
-        while (sleepTime > 0) {
-            env.ui.setFreeze(this.id, sleepTime);
-            try {
-                if (sleepTime < 500) {
-                    Thread.sleep(sleepTime);
-                    sleepTime = 0;
-
-                } else {
-                    Thread.sleep(500);
-                    sleepTime = sleepTime - 500;
-                }
-            } catch (InterruptedException e) {
-            }
-        }
-        env.ui.setFreeze(this.id, 0); // return the name at the display back to black
-
+        env.events.publish(new GameEvent.ScoreChanged(this.id, ++score)); // incrise the score and update the ui
+        freeze(env.config.pointFreezeMillis, false);
     }
 
     /**
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
+        freeze(env.config.penaltyFreezeMillis, true);
+    }
+
+    /**
+     * Freezes the player, showing the time left every half a second. In a room the player is not put to sleep,
+     * the end of the freeze is a timer task of the room.
+     */
+    private void freeze(long millis, boolean penalty) {
+        env.events.publish(new GameEvent.FreezeChanged(this.id, millis)); // set the ui to indicate the player as at freez
+        FlightEvents.Freeze freezeEvent = new FlightEvents.Freeze();
+        freezeEvent.begin();
+        freezeEvent.player = id;
+        freezeEvent.penalty = penalty;
+        if (room != null) {
+            frozen = true;
+            freezeStep(millis, freezeEvent);
+            return;
+        }
+        long sleepTime = millis;
 
-        env.ui.setFreeze(id, env.config.penaltyFreezeMillis);
-        long sleepTime = env.config.penaltyFreezeMillis;
         while (sleepTime > 0) {
-            env.ui.setFreeze(this.id, sleepTime);
+            env.events.publish(new GameEvent.FreezeChanged(this.id, sleepTime));
             try {
-                if (sleepTime < 500) {
-                    Thread.sleep(sleepTime);
-                } else {
-                    Thread.sleep(500);
-                }
+                Thread.sleep(Math.min(sleepTime, 500));
             } catch (InterruptedException e) {
+                if (terminate) { // the game is over, stop waiting (and keep the interrupt for the main loop)
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
             sleepTime = sleepTime - 500;
         }
+        freezeEvent.commit();
+        env.events.publish(new GameEvent.FreezeChanged(this.id, 0)); // return the name at the display back to black
 
-        env.ui.setFreeze(this.id, 0); // return the name at the display back to black
+    }
 
+    private void freezeStep(long sleepTime, FlightEvents.Freeze freezeEvent) {
+        if (terminate) return;
+        if (sleepTime > 0) {
+            env.events.publish(new GameEvent.FreezeChanged(this.id, sleepTime));
+            room.schedule(() -> freezeStep(sleepTime - 500, freezeEvent), Math.min(sleepTime, 500));
+            return;
+        }
+        freezeEvent.commit();
+        env.events.publish(new GameEvent.FreezeChanged(this.id, 0));
+        frozen = false;
+        handleKeyPresses();
     }
 
     public int score() {
@@ -259,7 +393,16 @@ public class Player implements Runnable {
      * @post - the int of the slot is removed from the que.
      */
     public boolean removeToken(int slot) {
-        return (myTokens.remove((Integer) slot) && table.removeToken(this.id, slot));
+        boolean removed = myTokens.remove((Integer) slot) && table.removeToken(this.id, slot);
+        if (removed) {
+            FlightEvents.TokenRemoved event = new FlightEvents.TokenRemoved();
+            if (event.shouldCommit()) {
+                event.player = id;
+                event.slot = slot;
+                event.commit();
+            }
+        }
+        return removed;
     }
 
     /**
@@ -271,22 +414,43 @@ public class Player implements Runnable {
      * cheak.
      */
     public void placeToken(int slot) {
+        // the dealer may have removed a card while we were placing a token on it, forget such tokens
+        myTokens.removeIf(tokenSlot -> !table.playerHasToken(this.id, tokenSlot));
         if (myTokens.size() == NUM_OF_PRMITED_TOKENS) {
-            System.out.println("Player: " + this.id + " Can't put more tokens");
+            env.logger.fine(() -> "Player: " + this.id + " Can't put more tokens");
             return;
         }
 
         if (table.placeToken(this.id, slot)) { // there is card at the slot
+            if (keyPressTime != 0) {
+                env.metrics.keyPressToTokenNanos.record(System.nanoTime() - keyPressTime);
+                keyPressTime = 0;
+            }
+            FlightEvents.TokenPlaced tokenEvent = new FlightEvents.TokenPlaced();
+            if (tokenEvent.shouldCommit()) {
+                tokenEvent.player = id;
+                tokenEvent.slot = slot;
+                tokenEvent.commit();
+            }
             try {
                 
                 myTokens.put(slot);
-                env.ui.placeToken(this.id, slot);
 
                 if (myTokens.size() == env.config.featureSize) { // cheak to set
                     // send to dealer
+                    waitingForResponse = true;
                     table.acceptSetToCheck(myTokens.stream().mapToInt(Integer::intValue).toArray(), getId());
+                    if (room != null) { // the answer comes as a task (see accepetResponde)
+                        dealer.claimSubmitted();
+                        return;
+                    }
                     // wait for an answer
-                    Integer response = gotResponse.take();
+                    Integer response;
+                    try {
+                        response = gotResponse.take();
+                    } finally {
+                        waitingForResponse = false;
+                    }
                     if (response == 1) {
                         point();
                     } else if (response == -1) {
@@ -295,7 +459,7 @@ public class Player implements Runnable {
                     // if the answer is not that it means the set was remove by the dealer because
                     // one of the cards was removed
                     if(response!= 1 || response!=-1) {
-                        System.out.println("Player: " + this.id + " your set was removed by the dealer.");
+                        env.logger.fine(() -> "Player: " + this.id + " your set was removed by the dealer.");
                         return;
                     }
 
@@ -308,21 +472,80 @@ public class Player implements Runnable {
             }
         
         } else { // no card at the slot
-            System.out.println("Player: " + this.id + " Can't place token on enpty slot");
+            env.logger.fine(() -> "Player: " + this.id + " Can't place token on enpty slot");
         }
 
     }
 
+    /**
+     * Sets the score of a resumed game.
+     */
+    void restoreScore(int score) {
+        this.score = score;
+        env.events.publish(new GameEvent.ScoreChanged(this.id, score));
+    }
+
+    /**
+     * Prepares the player for a new game in the same session, after its threads terminated: no score, and nothing
+     * left of the last game in the queues.
+     */
+    void reset() {
+        terminate = false;
+        playerThread = null;
+        aiThread = null;
+        myTokens.clear();
+        tokensToPlace.clear();
+        gotResponse.clear();
+        waitingForResponse = false;
+        goForSet = false;
+        keyPressTime = 0;
+        score = 0;
+        env.events.publish(new GameEvent.ScoreChanged(this.id, 0));
+    }
+
+    /**
+     * Places a token of a resumed game (before the player thread starts).
+     */
+    void restoreToken(int slot) {
+        if (table.placeToken(this.id, slot)) myTokens.offer(slot);
+    }
+
+    /**
+     * @return - the number of key presses the player did not handle yet.
+     */
+    public int pendingKeyPresses() {
+        return tokensToPlace.size();
+    }
+
     public int getId() {
         return this.id;
     }
 
     public void accepetResponde(int response) {
-        gotResponse.add(response);
+        if (room == null) {
+            gotResponse.add(response);
+            return;
+        }
+        waitingForResponse = false; // the dealer answers on a task of the room
+        if (response == 1) point();
+        else if (response == -1) penalty();
+        else handleKeyPresses();
     }
 
     public Thread gettThread() {
         return this.playerThread;
     }
 
+    /**
+     * A slot the player pressed the key of, and when it was pressed.
+     */
+    private static class KeyPress {
+        private final int slot;
+        private final long time = System.nanoTime();
+
+        private KeyPress(int slot) {
+            this.slot = slot;
+        }
+    }
+
 }
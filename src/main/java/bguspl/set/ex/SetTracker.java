@@ -0,0 +1,114 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+/**
+ * Counts the legal sets among the cards still in the game (the deck and the table together), so the dealer knows
+ * right away when no set is left.
+ *
+ * A set is determined by any config.featureSize - 1 of its cards (see Util.completeSet), so the sets that contain a
+ * card are found by completing the combinations of the other cards. The count is computed once (completing every
+ * combination of config.featureSize - 1 cards once), and then only the sets of a collected card are subtracted from
+ * it. Dealing and reshuffling move cards between the deck and the table without changing the count, so only
+ * collecting a legal set updates it.
+ */
+class SetTracker {
+
+    private final Util util;
+    private final int setSize;
+    private final boolean[] inGame;
+    private final int[] cards; // the cards in the game, the first size of them
+    private final int[] position; // the index of every card in cards
+    private int size;
+    private long sets;
+
+    /**
+     * @param util     - the utilities (for completing sets).
+     * @param setSize  - the number of cards in a set (config.featureSize).
+     * @param deckSize - the number of cards in a full deck.
+     * @param cards    - the cards in the game.
+     */
+    SetTracker(Util util, int setSize, int deckSize, Iterable<Integer> cards) {
+        this.util = util;
+        this.setSize = setSize;
+        inGame = new boolean[deckSize];
+        this.cards = new int[deckSize];
+        position = new int[deckSize];
+        for (int card : cards) {
+            if (inGame[card]) continue;
+            inGame[card] = true;
+            position[card] = size;
+            this.cards[size++] = card;
+        }
+        sets = countAllSets(new int[setSize - 1], 0, 0);
+    }
+
+    /**
+     * @return - true iff a legal set can still be formed from the cards in the game.
+     */
+    synchronized boolean anySetLeft() {
+        return sets > 0;
+    }
+
+    /**
+     * @return - the number of legal sets among the cards in the game.
+     */
+    synchronized long sets() {
+        return sets;
+    }
+
+    /**
+     * Takes cards out of the game (e.g. a collected set).
+     */
+    synchronized void remove(int[] removed) {
+        for (int card : removed) {
+            if (!inGame[card]) continue;
+            sets -= countSets(card);
+            inGame[card] = false;
+            int last = cards[--size];
+            cards[position[card]] = last;
+            position[last] = position[card];
+        }
+    }
+
+    /**
+     * Counts all the sets: the combinations of setSize - 1 cards (in the order of the cards array) whose completion is
+     * in the game and comes after them, so every set is counted once, by its first setSize - 1 cards.
+     */
+    private long countAllSets(int[] combination, int length, int from) {
+        if (length == combination.length) {
+            int completion = util.completeSet(combination);
+            return completion >= 0 && inGame[completion] && position[completion] >= from ? 1 : 0;
+        }
+        long count = 0;
+        for (int i = from; i < size; i++) {
+            combination[length] = cards[i];
+            count += countAllSets(combination, length + 1, i + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the sets of a card: the combinations of setSize - 2 other cards (in the order of the cards array) whose
+     * completion is in the game and comes after them.
+     */
+    private long countSets(int card) {
+        return countSets(card, new int[setSize - 1], 1, 0);
+    }
+
+    private long countSets(int card, int[] combination, int length, int from) {
+        combination[0] = card;
+        if (length == combination.length) {
+            int completion = util.completeSet(combination);
+            if (completion < 0 || completion == card || !inGame[completion] || position[completion] < from) return 0;
+            return 1;
+        }
+        long count = 0;
+        for (int i = from; i < size; i++) {
+            if (cards[i] == card) continue;
+            combination[length] = cards[i];
+            count += countSets(card, combination, length + 1, i + 1);
+        }
+        return count;
+    }
+}
@@ -1,7 +1,9 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvent;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -36,6 +38,13 @@ public class Table {
 
     protected LinkedBlockingQueue<setSlotsAndPlayerId> setsToCheck; //sets for the dealer to check
 
+    /**
+     * When the dealer splits the table into regions (bands of consecutive slots), the sets within a region go to the
+     * queue of the region instead of setsToCheck (which keeps the sets across regions).
+     */
+    int regions = 1;
+    List<LinkedBlockingQueue<setSlotsAndPlayerId>> regionSetsToCheck = new ArrayList<>();
+
     /**
      * Constructor for testing.
      *
@@ -104,12 +113,26 @@ public class Table {
             Thread.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
+        setCard(card, slot);
+    }
+
+    /**
+     * Places a card on the table in a grid slot right away, without the table delay (e.g. when resuming a game, or in a
+     * room, where nothing may sleep).
+     * @param card - the card id to place in the slot.
+     * @param slot - the slot in which the card should be placed.
+     */
+    void setCard(int card, int slot) {
+        FlightEvents.SlotLock lockEvent = new FlightEvents.SlotLock();
+        lockEvent.begin();
+        long lockRequested = System.nanoTime();
         synchronized(slotToTokens[slot]) { //lock the specific slot - partly sync
+        slotLockAcquired(slot, lockRequested, lockEvent);
 
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
 
-        env.ui.placeCard(card,slot);
+        env.events.publish(new GameEvent.CardPlaced(card, slot));
         }
     }
 
@@ -125,7 +148,19 @@ public class Table {
             Thread.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
+        clearCard(slot);
+    }
+
+    /**
+     * Removes a card from a grid slot right away, without the table delay (e.g. in a room, where nothing may sleep).
+     * @param slot - the slot from which to remove the card.
+     */
+    void clearCard(int slot) {
+        FlightEvents.SlotLock lockEvent = new FlightEvents.SlotLock();
+        lockEvent.begin();
+        long lockRequested = System.nanoTime();
         synchronized(slotToTokens[slot]) { //lock the specific slot - partly sync
+        slotLockAcquired(slot, lockRequested, lockEvent);
 
         for (int playerId = 0; playerId < env.config.players; playerId++) { //cheak if there are tokens (on the grid slot only) and if so, remove them
             if (slotToTokens[slot][playerId]) {
@@ -137,7 +172,7 @@ public class Table {
         cardToSlot[card] = null;
         slotToCard[slot] = null;
 
-        env.ui.removeCard(slot);
+        env.events.publish(new GameEvent.CardRemoved(card, slot));
         }
     }
 
@@ -152,15 +187,19 @@ public class Table {
      */
     public boolean placeToken(int player, int slot) {
 
+        FlightEvents.SlotLock lockEvent = new FlightEvents.SlotLock();
+        lockEvent.begin();
+        long lockRequested = System.nanoTime();
         synchronized(slotToTokens[slot]) { //lock the specific slot - partly sync
-                        
+            slotLockAcquired(slot, lockRequested, lockEvent);
+
             if (slotToCard[slot]==null) { //no card at the slot
                 System.out.print("Player" + player + " try to place a token to empty lot.");
                 return false;
             }   
             else {
                 slotToTokens[slot][player] = true;
-                env.ui.placeToken(player, slot);
+                env.events.publish(new GameEvent.TokenPlaced(player, slot));
                 return true;
             }
         }
@@ -174,11 +213,15 @@ public class Table {
      */
     public boolean removeToken(int player, int slot) {
 
+        FlightEvents.SlotLock lockEvent = new FlightEvents.SlotLock();
+        lockEvent.begin();
+        long lockRequested = System.nanoTime();
         synchronized(slotToTokens[slot]) { //lock the specific slot - partly sync
+            slotLockAcquired(slot, lockRequested, lockEvent);
 
             if(slotToTokens[slot][player]){
                 slotToTokens[slot][player] = false;
-                env.ui.removeToken(player, slot);
+                env.events.publish(new GameEvent.TokenRemoved(player, slot));
                 return true;
             }
             
@@ -187,6 +230,21 @@ public class Table {
     }
 
 
+    /**
+     * Records how long the current thread waited for the lock of a slot. Called right after the lock was acquired.
+     *
+     * @param slot          - the slot.
+     * @param lockRequested - the time the lock was requested at (System.nanoTime()).
+     * @param event         - the flight recorder event that was begun when the lock was requested.
+     */
+    private void slotLockAcquired(int slot, long lockRequested, FlightEvents.SlotLock event) {
+        env.metrics.slotLockWaitNanos.record(System.nanoTime() - lockRequested);
+        if (event.shouldCommit()) {
+            event.slot = slot;
+            event.commit();
+        }
+    }
+
     public boolean playerHasToken (int player, int slot){
         synchronized(slotToTokens[slot]) {
         return (slotToTokens[slot][player]);
@@ -195,7 +253,20 @@ public class Table {
  
        
     public void acceptSetToCheck (int[] set, int playerId) {
-        setsToCheck.add(new setSlotsAndPlayerId(set,playerId));
+        int region = regionOf(set[0]);
+        for (int slot : set)
+            if (regionOf(slot) != region) region = -1;
+        LinkedBlockingQueue<setSlotsAndPlayerId> queue = region < 0 || regions == 1 ? setsToCheck : regionSetsToCheck.get(region);
+        queue.add(new setSlotsAndPlayerId(set,playerId));
+        env.metrics.setsToCheckDepth.record(queue.size());
+        env.events.publish(new GameEvent.ClaimSubmitted(playerId, set));
+    }
+
+    /**
+     * @return - the region of a slot (see regions).
+     */
+    int regionOf(int slot) {
+        return slot * regions / slotToCard.length;
     }
 
     public int numOfSetToCheck () {
@@ -220,6 +291,7 @@ public class Table {
     public class setSlotsAndPlayerId {
         protected int[] setSlots;
         protected int playerId;
+        protected final long submitTime = System.nanoTime();
     
         public setSlotsAndPlayerId(int[] setSlots, int playerId) {
             this.setSlots = setSlots;
@@ -0,0 +1,145 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.GameEvent;
+import bguspl.set.UserInterfaceDecorator;
+import bguspl.set.Util;
+import bguspl.set.ex.Table.setSlotsAndPlayerId;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the path of a claim (placing the tokens, handing the set to the dealer thread, testing it and answering the
+ * player) on a throwaway table before the game starts, so that the first claims of the game run compiled code and not
+ * the interpreter. It runs in rounds until the JIT compiler stops compiling (two rounds in a row add no compilation
+ * time), or until the time cap.
+ */
+public class Warmup {
+
+    private static final long ROUND_MILLIS = 50;
+    private static final int CLAIMS_PER_DEAL = 16;
+
+    private final Env env;
+    private final Table table;
+    private final int players;
+    private final int cards; // the number of cards dealt, on the first slots (the deck may be smaller than the table)
+    private final Random random = new Random(0);
+    private final List<Integer> deck;
+    private final LinkedBlockingQueue<Integer> responses = new LinkedBlockingQueue<>(1);
+    private int claims;
+
+    private Warmup(Config config, Util util) {
+        Logger silent = Logger.getAnonymousLogger();
+        silent.setUseParentHandlers(false);
+        silent.setLevel(Level.OFF);
+        env = new Env(silent, config, new UserInterfaceDecorator(silent, util, null), util);
+        table = new Table(env);
+        players = config.players;
+        cards = Math.min(config.tableSize, config.deckSize);
+        deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Warms up the claim path and reports how long it took.
+     *
+     * @param logger    - the logger (for the report).
+     * @param config    - the game settings (the throwaway table has the size of the game table).
+     * @param util      - the utilities of the game, so the same implementation is warmed up.
+     * @param maxMillis - the time cap.
+     * @return - the milliseconds the warm up took.
+     */
+    public static long run(Logger logger, Config config, Util util, long maxMillis) {
+        if (config.players == 0 || Math.min(config.tableSize, config.deckSize) < config.featureSize) return 0;
+        return new Warmup(config, util).run(logger, maxMillis);
+    }
+
+    private long run(Logger logger, long maxMillis) {
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean timed = jit != null && jit.isCompilationTimeMonitoringSupported();
+        long start = System.nanoTime();
+        long deadline = start + maxMillis * 1000000;
+
+        env.events.start();
+        Thread dealer = new Thread(this::dealer, "warmup-dealer");
+        dealer.setDaemon(true);
+        dealer.start();
+        boolean settled = false;
+        try {
+            long compiled = timed ? jit.getTotalCompilationTime() : 0;
+            int quiet = 0;
+            while (!settled && System.nanoTime() < deadline) {
+                long roundEnd = Math.min(System.nanoTime() + ROUND_MILLIS * 1000000, deadline);
+                while (System.nanoTime() < roundEnd) claim();
+                if (!timed) continue;
+                long total = jit.getTotalCompilationTime();
+                quiet = total == compiled ? quiet + 1 : 0;
+                compiled = total;
+                settled = quiet >= 2;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            dealer.interrupt();
+            env.events.close();
+        }
+
+        long millis = (System.nanoTime() - start) / 1000000;
+        logger.severe("warm up took " + millis + " ms (" + claims + " claims, "
+                + (settled ? "compilation settled" : timed ? "time cap reached" : "no compilation time to watch") + ")");
+        return millis;
+    }
+
+    /**
+     * One claim of a random player on random slots with cards, like Player.placeToken and Dealer.checkSet do it. Deals a new
+     * table every few claims.
+     */
+    private void claim() throws InterruptedException {
+        if (claims % CLAIMS_PER_DEAL == 0) deal();
+        int player = claims % players;
+        List<Integer> slots = IntStream.range(0, cards).boxed().collect(Collectors.toList());
+        Collections.shuffle(slots, random);
+        int[] set = new int[env.config.featureSize];
+        for (int i = 0; i < set.length; i++) {
+            set[i] = slots.get(i);
+            table.placeToken(player, set[i]);
+        }
+        table.acceptSetToCheck(set, player);
+        responses.take();
+        for (int slot : set) table.removeToken(player, slot);
+        claims++;
+    }
+
+    private void deal() {
+        Collections.shuffle(deck, random);
+        for (int slot = 0; slot < cards; slot++) {
+            if (table.slotToCard[slot] != null) table.clearCard(slot);
+            table.setCard(deck.get(slot), slot);
+        }
+    }
+
+    /**
+     * The dealer side of the claims: takes the sets, tests them and answers.
+     */
+    private void dealer() {
+        try {
+            while (true) {
+                setSlotsAndPlayerId set = table.setsToCheck.take();
+                boolean legal = env.util.testSet(table.slotToCards(set.setSlots));
+                env.events.publish(new GameEvent.ClaimResolved(set.playerId, set.setSlots, legal));
+                responses.put(legal ? 1 : -1);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
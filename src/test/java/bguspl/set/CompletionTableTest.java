@@ -0,0 +1,76 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static bguspl.set.TestConfigs.config;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompletionTableTest {
+
+    @TempDir
+    Path directory;
+
+    private static void assertMatchesCompleteSet(CompletionTable table, Config config) {
+        Util util = new UtilImpl(config);
+        for (int a = 0; a < config.deckSize; a++)
+            for (int b = 0; b < config.deckSize; b++)
+                assertEquals(util.completeSet(new int[]{a, b}), table.complete(a, b), "cards " + a + ", " + b);
+    }
+
+    @Test
+    void completesEveryPairLikeCompleteSet() throws IOException {
+        for (int featureCount = 1; featureCount <= 5; featureCount++) {
+            Config config = config(3, featureCount);
+            assertMatchesCompleteSet(CompletionTable.open(directory.resolve("pairs-" + featureCount), config), config);
+        }
+    }
+
+    @Test
+    void reusesTheFileOfTheSameDeck() throws IOException {
+        Config config = config(3, 4);
+        Path file = directory.resolve("cache").resolve("pairs");
+        CompletionTable.open(file, config);
+        FileTime created = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, created);
+        assertMatchesCompleteSet(CompletionTable.open(file, config), config);
+        assertEquals(created, Files.getLastModifiedTime(file));
+    }
+
+    @Test
+    void replacesTheFileOfAnotherDeck() throws IOException {
+        Path file = directory.resolve("pairs");
+        CompletionTable.open(file, config(3, 3));
+        Config config = config(3, 4);
+        assertMatchesCompleteSet(CompletionTable.open(file, config), config);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "no temporary file is left behind");
+        }
+    }
+
+    @Test
+    void utilUsesTheTable() throws IOException {
+        Config config = config(3, 4);
+        Util computed = new UtilImpl(config);
+        Util looked = new UtilImpl(config, CompletionTable.open(directory.resolve("pairs"), config));
+        for (int a = 0; a < config.deckSize; a++)
+            for (int b = a + 1; b < config.deckSize; b++) {
+                int third = computed.completeSet(new int[]{a, b});
+                assertEquals(third, looked.completeSet(new int[]{a, b}));
+                assertEquals(computed.testSet(new int[]{a, b, (third + 1) % config.deckSize}),
+                        looked.testSet(new int[]{a, b, (third + 1) % config.deckSize}));
+            }
+    }
+
+    @Test
+    void refusesSetsOfOtherSizes() {
+        assertThrows(IllegalArgumentException.class, () -> CompletionTable.open(directory.resolve("pairs"), config(4, 3)));
+    }
+}
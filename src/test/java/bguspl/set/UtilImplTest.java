@@ -0,0 +1,67 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static bguspl.set.TestConfigs.config;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the scalar testSets; to run the vector one: mvn -P vector test -DargLine="--add-modules jdk.incubator.vector"
+ */
+class UtilImplTest {
+
+    private static final int TRIPLES = 1000;
+
+    /**
+     * Checks testSets against testSet on random triples of distinct cards, half of them completed to legal sets.
+     */
+    private static void assertTestSetsMatches(int featureCount) {
+        Config config = config(3, featureCount);
+        Util util = new UtilImpl(config);
+        Random random = new Random(featureCount);
+        int[] a = new int[TRIPLES], b = new int[TRIPLES], c = new int[TRIPLES];
+        for (int i = 0; i < TRIPLES; i++) {
+            a[i] = random.nextInt(config.deckSize);
+            do b[i] = random.nextInt(config.deckSize); while (b[i] == a[i]);
+            do c[i] = i % 2 == 0 ? util.completeSet(new int[]{a[i], b[i]}) : random.nextInt(config.deckSize);
+            while (c[i] == a[i] || c[i] == b[i]);
+        }
+        boolean[] out = new boolean[TRIPLES];
+        util.testSets(a, b, c, out);
+        int legal = 0;
+        for (int i = 0; i < TRIPLES; i++) {
+            assertEquals(util.testSet(new int[]{a[i], b[i], c[i]}), out[i], "cards " + a[i] + ", " + b[i] + ", " + c[i]);
+            if (out[i]) legal++;
+        }
+        assertTrue(legal >= TRIPLES / 2, "the completed triples are legal sets");
+    }
+
+    @Test
+    void testSetsMatchesTestSet() {
+        for (int featureCount = 2; featureCount <= 7; featureCount++) assertTestSetsMatches(featureCount);
+    }
+
+    @Test
+    void testSetsMatchesTestSetWithoutPackedFeatures() {
+        assertTestSetsMatches(11); // more features than fit in an int of 3-bit fields
+    }
+
+    @Test
+    void testSetsOfNoTriples() {
+        new UtilImpl(config(3, 4)).testSets(new int[0], new int[0], new int[0], new boolean[0]);
+    }
+
+    @Test
+    void completeSetCompletesLegalSets() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        for (int first = 0; first < config.deckSize; first++)
+            for (int second = first + 1; second < config.deckSize; second++) {
+                int third = util.completeSet(new int[]{first, second});
+                assertTrue(util.testSet(new int[]{first, second, third}));
+            }
+    }
+}
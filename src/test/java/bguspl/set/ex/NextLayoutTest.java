@@ -0,0 +1,84 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static bguspl.set.TestConfigs.config;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NextLayoutTest {
+
+    private static final int LAYOUT_SIZE = 12;
+
+    /**
+     * Checks that the layout is made of distinct cards in the game, as many as fit, with the number of sets it keeps.
+     */
+    private static void assertValid(NextLayout layout, List<Integer> gameCards, Util util) {
+        int[] cards = layout.cards();
+        assertEquals(Math.min(LAYOUT_SIZE, gameCards.size()), cards.length);
+        assertEquals(cards.length, Arrays.stream(cards).distinct().count());
+        for (int card : cards) assertTrue(gameCards.contains(card), "card " + card + " is not in the game");
+        List<Integer> layoutCards = Arrays.stream(cards).boxed().collect(Collectors.toList());
+        assertEquals(util.findSets(layoutCards, Integer.MAX_VALUE).size(), layout.sets());
+    }
+
+    @Test
+    void choosesCardsOfTheGame() {
+        for (int[] deck : new int[][]{{3, 4}, {4, 3}}) {
+            Config config = config(deck[0], deck[1]);
+            Util util = new UtilImpl(config);
+            for (long seed = 0; seed < 20; seed++) {
+                List<Integer> gameCards = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+                Collections.shuffle(gameCards, new Random(seed));
+                gameCards = gameCards.subList(0, 30);
+                NextLayout layout = new NextLayout(util, config.featureSize, config.deckSize, gameCards, LAYOUT_SIZE, new Random(seed));
+                assertValid(layout, gameCards, util);
+            }
+        }
+    }
+
+    @Test
+    void isTheSameForTheSameSeed() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        List<Integer> gameCards = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        NextLayout first = new NextLayout(util, config.featureSize, config.deckSize, gameCards, LAYOUT_SIZE, new Random(7));
+        NextLayout second = new NextLayout(util, config.featureSize, config.deckSize, gameCards, LAYOUT_SIZE, new Random(7));
+        assertArrayEquals(first.cards(), second.cards());
+    }
+
+    @Test
+    void staysValidAsSetsAreCollected() {
+        for (int[] deck : new int[][]{{3, 4}, {4, 3}}) {
+            Config config = config(deck[0], deck[1]);
+            Util util = new UtilImpl(config);
+            List<Integer> gameCards = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Random random = new Random(8);
+            NextLayout layout = new NextLayout(util, config.featureSize, config.deckSize, gameCards, LAYOUT_SIZE, random);
+            while (true) {
+                // collect the sets of the layout first, so its cards are replaced
+                List<Integer> layoutCards = Arrays.stream(layout.cards()).boxed().collect(Collectors.toList());
+                List<int[]> sets = util.findSets(layoutCards, 1);
+                if (sets.isEmpty()) sets = util.findSets(gameCards, 1);
+                if (sets.isEmpty()) break;
+                int[] collected = sets.get(0);
+                layout.remove(collected);
+                for (int card : collected) gameCards.remove((Integer) card);
+                for (int card : collected) assertFalse(Arrays.stream(layout.cards()).anyMatch(c -> c == card));
+                assertValid(layout, gameCards, util);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static bguspl.set.TestConfigs.config;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SetTrackerTest {
+
+    private static List<Integer> shuffledDeck(Config config, long seed) {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(seed));
+        return deck;
+    }
+
+    @Test
+    void countsTheSetsOfAFullDeck() {
+        for (int[] deck : new int[][]{{3, 2}, {3, 3}, {3, 4}, {4, 3}, {5, 2}}) {
+            Config config = config(deck[0], deck[1]);
+            Util util = new UtilImpl(config);
+            List<Integer> cards = shuffledDeck(config, 1);
+            SetTracker tracker = new SetTracker(util, config.featureSize, config.deckSize, cards);
+            assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), tracker.sets(), deck[0] + "x" + deck[1]);
+        }
+    }
+
+    @Test
+    void ignoresCardsGivenTwice() {
+        Config config = config(3, 3);
+        Util util = new UtilImpl(config);
+        List<Integer> cards = shuffledDeck(config, 2).subList(0, 12);
+        List<Integer> twice = new ArrayList<>(cards);
+        twice.addAll(cards);
+        SetTracker tracker = new SetTracker(util, config.featureSize, config.deckSize, twice);
+        assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), tracker.sets());
+    }
+
+    @Test
+    void followsTheCollectedSetsToTheEndOfTheGame() {
+        for (int[] deck : new int[][]{{3, 4}, {4, 3}}) {
+            Config config = config(deck[0], deck[1]);
+            Util util = new UtilImpl(config);
+            List<Integer> cards = shuffledDeck(config, 3);
+            SetTracker tracker = new SetTracker(util, config.featureSize, config.deckSize, cards);
+            Random random = new Random(4);
+            while (true) {
+                List<int[]> sets = util.findSets(cards, Integer.MAX_VALUE);
+                assertEquals(sets.size(), tracker.sets(), deck[0] + "x" + deck[1] + " with " + cards.size() + " cards");
+                if (sets.isEmpty()) break;
+                int[] collected = sets.get(random.nextInt(sets.size()));
+                tracker.remove(collected);
+                for (int card : collected) cards.remove((Integer) card);
+            }
+            assertFalse(tracker.anySetLeft());
+        }
+    }
+
+    @Test
+    void ignoresCardsNotInTheGame() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        List<Integer> cards = shuffledDeck(config, 5);
+        List<Integer> inGame = new ArrayList<>(cards.subList(0, 40));
+        SetTracker tracker = new SetTracker(util, config.featureSize, config.deckSize, inGame);
+        tracker.remove(new int[]{cards.get(50), cards.get(60), cards.get(70)});
+        assertEquals(util.findSets(inGame, Integer.MAX_VALUE).size(), tracker.sets());
+    }
+}
@@ -0,0 +1,35 @@
+package bguspl.set;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Tests the triples a vector at a time with the (incubating) Vector API: the packed features of the cards are gathered
+ * into lanes, summed, and every 3-bit field of the sums is checked in all the lanes at once. UtilImpl uses it only if
+ * the JVM runs with --add-modules jdk.incubator.vector.
+ */
+class VectorSetBatch implements SetBatch {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LEGAL_FIELD_SUMS = 1 | 1 << 3 | 1 << 6; // bit s is set iff a field sum of s is legal
+
+    @Override
+    public int testSets(int[] packed, int fields, int[] a, int[] b, int[] c, boolean[] out) {
+        int bound = SPECIES.loopBound(out.length);
+        IntVector legalSums = IntVector.broadcast(SPECIES, LEGAL_FIELD_SUMS);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            IntVector sum = IntVector.fromArray(SPECIES, packed, 0, a, i)
+                    .add(IntVector.fromArray(SPECIES, packed, 0, b, i))
+                    .add(IntVector.fromArray(SPECIES, packed, 0, c, i));
+            IntVector legal = IntVector.broadcast(SPECIES, 1);
+            for (int field = 0; field < fields; field++) {
+                IntVector value = sum.lanewise(VectorOperators.LSHR, 3 * field).and(7);
+                legal = legal.and(legalSums.lanewise(VectorOperators.LSHR, value));
+            }
+            long bits = legal.compare(VectorOperators.NE, 0).toLong(); // VectorMask.intoArray allocates on JDK 17
+            for (int lane = 0; lane < SPECIES.length(); lane++) out[i + lane] = (bits >>> lane & 1) != 0;
+        }
+        return bound;
+    }
+}